@@ -0,0 +1,64 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import timer.TimeFormatter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of the displayed time as done by TimerGUI.updateTimerText on every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+    @Param({"HH_MM_SS", "MM_SS", "D_HH_MM_SS", "HH_MM_SS_T", "MM_SS_CC"})
+    public TimeFormatter.Layout layout;
+
+    private final TimeFormatter formatter = new TimeFormatter();
+
+    private long nanos = 3_723_400_000_000L;
+
+    @Benchmark
+    public int formatter() {
+        this.nanos -= 1_000_000;
+        return this.formatter.format(this.nanos, this.layout);
+    }
+
+    @Benchmark
+    public String formatterToString() {
+        this.nanos -= 1_000_000;
+        this.formatter.format(this.nanos, this.layout);
+        return this.formatter.toString();
+    }
+
+    /**
+     * The String.format call TimerGUI used before the formatter, kept as a reference point.
+     */
+    @Benchmark
+    public String stringFormat() {
+        this.nanos -= 1_000_000;
+        var seconds = this.nanos / 1_000_000_000L;
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background image decoding through ImageIO.read, as done when loading settings or choosing a new image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageDecodeBenchmark {
+
+    @Param({"jpg", "png"})
+    public String format;
+
+    @Param({"1920x1080", "6000x4000"})
+    public String size;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        var dimensions = this.size.split("x");
+        this.encoded = Images.encode(this.format, Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+    }
+
+    @Benchmark
+    public BufferedImage imageIORead() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(this.encoded));
+    }
+}
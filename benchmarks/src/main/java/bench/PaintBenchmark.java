@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package bench;
+
+import data.Settings;
+import gui.TimerPanel;
+import org.openjdk.jmh.annotations.*;
+import timer.TimeFormatter;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offscreen painting of the TimerPanel for every background mode. Renders into a BufferedImage, so it runs headless.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    @Param({"IMAGE", "COLOR", "TRANSPARENT"})
+    public Settings.BackgroundMode mode;
+
+    @Param({"1920x1080", "3840x2160"})
+    public String size;
+
+    private TimerPanel panel;
+
+    private BufferedImage target;
+
+    private Graphics2D graphics;
+
+    private final TimeFormatter formatter = new TimeFormatter();
+
+    private long nanos = 3_723_000_000_000L;
+
+    @Setup
+    public void setup() throws IOException {
+        var dimensions = this.size.split("x");
+        var width = Integer.parseInt(dimensions[0]);
+        var height = Integer.parseInt(dimensions[1]);
+
+        var settings = new Settings();
+        settings.loadDefaults(new Rectangle(0, 0, width, height));
+        settings.mode = this.mode;
+        settings.backgroundImage = ImageIO.read(new ByteArrayInputStream(Images.encode("jpg", 4000, 3000)));
+
+        this.panel = new TimerPanel(settings);
+        this.panel.setDoubleBuffered(false);
+        this.panel.setSize(width, height);
+
+        this.target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.graphics = this.target.createGraphics();
+
+        this.formatter.format(this.nanos, TimeFormatter.Layout.HH_MM_SS);
+        this.panel.setText(this.formatter.getBuffer(), this.formatter.getLength());
+        this.panel.paint(this.graphics);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage fullFrame() {
+        this.panel.paint(this.graphics);
+        return this.target;
+    }
+
+    /**
+     * One countdown tick: update the text and repaint only the area the panel would request.
+     */
+    @Benchmark
+    public BufferedImage tick() {
+        this.nanos -= 1_000_000_000L;
+        var length = this.formatter.format(this.nanos, TimeFormatter.Layout.HH_MM_SS);
+        var dirty = this.panel.getRenderer().updateText(this.formatter.getBuffer(), length,
+                this.target.getWidth(), this.target.getHeight(), null);
+
+        if (dirty != null) {
+            this.graphics.setClip(dirty.x, dirty.y, dirty.width, dirty.height);
+            this.panel.paint(this.graphics);
+            this.graphics.setClip(null);
+        }
+        return this.target;
+    }
+}
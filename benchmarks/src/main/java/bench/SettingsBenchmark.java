@@ -0,0 +1,89 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package bench;
+
+import data.MemoryPreferences;
+import data.Settings;
+import data.SettingsStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+/**
+ * Settings persistence against an in-memory Preferences node and the settings file read at startup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SettingsBenchmark {
+
+    private static final Rectangle BOUNDS = new Rectangle(0, 0, 1920, 1080);
+
+    private Preferences preferences;
+
+    private Settings settings;
+
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        this.preferences = new MemoryPreferences().node("CountdownApp");
+        this.settings = new Settings();
+        this.settings.loadDefaults(BOUNDS);
+        this.settings.saveTo(this.preferences);
+
+        this.file = Files.createTempFile("settings", ".properties");
+        Files.delete(this.file);
+        var store = new SettingsStore(this.file, this.preferences);
+        store.load();
+        store.changed(this.settings);
+        store.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public Settings loadFrom() throws IOException {
+        var loaded = new Settings();
+        loaded.loadFrom(this.preferences, BOUNDS);
+        return loaded;
+    }
+
+    @Benchmark
+    public Settings loadFromFile() throws IOException {
+        var loaded = new Settings();
+        loaded.loadFrom(new SettingsStore(this.file, null).load(), BOUNDS);
+        return loaded;
+    }
+
+    @Benchmark
+    public Preferences saveTo() {
+        this.settings.saveTo(this.preferences);
+        return this.preferences;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import timer.TimerRegistry;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many concurrent countdowns driven by one thread. The registry runs on a simulated clock, so one benchmark call
+ * is one tick of the driver thread. Expired countdowns are restarted with a new duration to keep the population
+ * constant. At the default 10 ms tick the driver has to finish a tick in well under 10 ms to keep up on one core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerRegistryBenchmark {
+
+    @Param({"10000"})
+    public int countdowns;
+
+    // Upper limit of the random durations, talk slots and breakouts are minutes to hours
+    @Param({"3600"})
+    public int maxSeconds;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private long now = 0;
+
+    private TimerRegistry registry;
+
+    private TimerRegistry.Countdown[] handles;
+
+    @Setup
+    public void setup() {
+        this.registry = new TimerRegistry(() -> this.now, TimerRegistry.DEFAULT_TICK_NANOS);
+        this.handles = new TimerRegistry.Countdown[this.countdowns];
+        for (int i = 0; i < this.countdowns; i++) {
+            this.handles[i] = this.registry.create("countdown-" + i, this.randomDuration(), this::restart);
+            this.handles[i].start();
+        }
+    }
+
+    private Duration randomDuration() {
+        return Duration.ofMillis(this.random.nextLong(1, this.maxSeconds * 1000L));
+    }
+
+    private void restart(TimerRegistry.Countdown countdown) {
+        countdown.reset(this.randomDuration());
+        countdown.start();
+    }
+
+    /**
+     * One tick of the driver thread with all countdowns running.
+     */
+    @Benchmark
+    public int tick() {
+        this.now += TimerRegistry.DEFAULT_TICK_NANOS;
+        return this.registry.advanceTo(this.now);
+    }
+
+    /**
+     * Operator commands on a random countdown while all others keep running.
+     */
+    @Benchmark
+    public long pauseResume() {
+        var countdown = this.handles[this.random.nextInt(this.handles.length)];
+        countdown.pause();
+        countdown.start();
+        return countdown.getRemainingNanos();
+    }
+
+    /**
+     * One simulated hour of the driver thread, every countdown expires and is restarted at least once.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public int hour() {
+        var expired = 0;
+        var end = this.now + 3600 * 1_000_000_000L;
+        while (this.now < end) {
+            expired += this.tick();
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,92 @@
+#!/bin/sh
+#
+# Checks the cluster mode with several JVMs on one machine: a leader and two followers run headless on
+# loopback, the followers must show the remaining time of the leader and keep counting once it is gone.
+#
+# Usage: scripts/cluster-loopback.sh [path to jar-with-dependencies]
+# Build the JAR with "mvn package" first.
+
+JAR=${1:-$(ls target/SimpleCountdown-*-jar-with-dependencies.jar 2>/dev/null | head -n 1)}
+if [ ! -f "$JAR" ]; then
+    echo "JAR not found, run mvn package first" >&2
+    exit 2
+fi
+
+# Allowed difference between leader and followers in milliseconds
+TOLERANCE=50
+WORK=$(mktemp -d)
+PIDS=""
+
+cleanup() {
+    [ -n "$PIDS" ] && kill $PIDS 2>/dev/null
+    rm -rf "$WORK"
+}
+trap cleanup EXIT INT TERM
+
+run() {
+    name=$1
+    shift
+    java -Djava.awt.headless=true -jar "$JAR" --headless --settings-file="$WORK/$name.properties" --watchdog=0 "$@" \
+        > "$WORK/$name.log" 2>&1 &
+    PIDS="$PIDS $!"
+}
+
+remaining() {
+    curl -s "http://127.0.0.1:$1/state" | sed -n 's/.*"remainingMillis":\([0-9]*\).*/\1/p'
+}
+
+running() {
+    curl -s "http://127.0.0.1:$1/state" | sed -n 's/.*"running":\([a-z]*\).*/\1/p'
+}
+
+# Several followers cannot share one port, so they listen on their own ports and the leader sends to each
+run follower1 --cluster=follower --cluster-unicast --cluster-port=14546 --http-port=18181 --control-port=18191
+run follower2 --cluster=follower --cluster-unicast --cluster-port=14547 --http-port=18182 --control-port=18192
+run leader --cluster=leader --cluster-peers=127.0.0.1:14546,127.0.0.1:14547 --http-port=18180 --control-port=18190 \
+    --countdown=00:10:00 --start
+LEADER_PID=${PIDS##* }
+sleep 5
+
+failed=0
+if [ -z "$(remaining 18190)" ]; then
+    echo "Leader does not answer, see its output:" >&2
+    cat "$WORK/leader.log" >&2
+    exit 1
+fi
+
+for port in 18191 18192; do
+    # The follower is queried between two queries of the leader, their mean is the leader time at that moment.
+    # The best of a few samples is taken, the first requests to a JVM are slow.
+    best=""
+    for sample in 1 2 3 4 5; do
+        before=$(remaining 18190)
+        follower=$(remaining $port)
+        after=$(remaining 18190)
+        [ -z "$follower" ] && continue
+        difference=$(( follower - (before + after) / 2 ))
+        difference=${difference#-}
+        if [ -z "$best" ] || [ "$difference" -lt "$best" ]; then
+            best=$difference
+        fi
+    done
+    echo "Follower on $port: ${follower:-none} ms, difference to the leader: ${best:-none} ms"
+    if [ -z "$best" ] || [ "$best" -gt "$TOLERANCE" ]; then
+        failed=1
+    fi
+done
+
+# Followers keep counting on their own without the leader
+kill "$LEADER_PID"
+before=$(remaining 18191)
+sleep 2
+after=$(remaining 18191)
+echo "Follower without leader: $before ms -> $after ms, running: $(running 18191)"
+if [ "$(running 18191)" != "true" ] || [ "${after:-0}" -ge "${before:-0}" ]; then
+    failed=1
+fi
+
+if [ $failed -ne 0 ]; then
+    echo "FAILED" >&2
+    exit 1
+fi
+echo "OK"
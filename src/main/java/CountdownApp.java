@@ -14,23 +14,54 @@
  *  You should have received a copy of the GNU General Public License
  *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
  */
+import data.Options;
 import data.Settings;
+import data.SettingsStore;
+import diag.EdtWatchdog;
+import diag.Metrics;
 import gui.CountdownControlGUI;
+import gui.FrameExporter;
+import gui.ImageDecoder;
+import gui.OffscreenOutput;
+import gui.ResourceCache;
 import gui.TimerGUI;
+import net.ClusterSync;
+import net.ControlServer;
+import net.FrameServer;
+import timer.CountdownClock;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.prefs.Preferences;
 
 public class CountdownApp {
 
     public static void main(String[] args) throws IOException {
-        if (GraphicsEnvironment.isHeadless()) {
-            System.err.println("Application cannot be run in headless mode.");
-            System.exit(-1);
+        final var options = new Options(args);
+        // Earlier versions kept the settings in the platform preferences, they are migrated on first start
+        final var store = new SettingsStore(Path.of(options.get("settings-file", SettingsStore.defaultFile().toString())),
+                Preferences.userRoot().node(CountdownApp.class.getName()));
+        // An export never touches the event dispatch thread, so there is nothing to watch
+        if (options.has("export")) {
+            runExport(options, store);
+            return;
+        }
+        Metrics.register();
+        startWatchdog(options);
+        if (GraphicsEnvironment.isHeadless() || options.has("headless")) {
+            runHeadless(options, store);
+            return;
         }
 
         try {
@@ -40,36 +71,249 @@ public class CountdownApp {
         }
 
         final var env = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        final var preferences = Preferences.userRoot().node(CountdownApp.class.getName());
 
-        int length = env.getScreenDevices().length;
-        var screen = env.getScreenDevices()[length - 1];
-        var screenConfig = screen.getDefaultConfiguration();
+        var screens = selectScreens(env, options.get("displays", null));
+        var screenConfig = screens.get(0).getDefaultConfiguration();
 
         var settings = new Settings();
         try {
-            settings.loadFrom(preferences, screenConfig.getBounds());
+            settings.loadFrom(store.load(), screenConfig.getBounds());
         } catch (Exception e) {
             settings.loadDefaults(screenConfig.getBounds());
 
             JOptionPane.showMessageDialog(null, "Error occurred on loading preferences. " +
                     "Falling back to default\n\n  Message: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
+        ResourceCache.getDefault().setBudget(settings.cacheBudgetMB * 1024L * 1024L);
+        settings.overlay = Boolean.parseBoolean(options.get("overlay", String.valueOf(settings.overlay)));
 
         SwingUtilities.invokeLater(() -> {
-            var timerGUI = new TimerGUI();
-            timerGUI.initialize(settings);
+            // A single clock drives every output, so all displays switch to the next value in the same event
+            var clock = new CountdownClock();
+            var outputs = new ArrayList<TimerGUI>();
+            var frameRate = 0;
+            for (GraphicsDevice device : screens) {
+                frameRate = Math.max(frameRate, device.getDisplayMode().getRefreshRate());
+                var timerGUI = new TimerGUI(clock, device.getDefaultConfiguration());
+                if (screens.size() > 1) {
+                    timerGUI.setOutputBounds(device.getDefaultConfiguration().getBounds());
+                }
+                timerGUI.initialize(settings);
+                outputs.add(timerGUI);
+            }
 
-            var controlGUI = new CountdownControlGUI(timerGUI, preferences);
+            clock.setFrameRate(frameRate);
+
+            var controlGUI = new CountdownControlGUI(outputs, store);
             controlGUI.init(settings);
 
-            timerGUI.setVisible(true);
-            if (settings.fullscreen) {
-                screen.setFullScreenWindow(timerGUI);
+            for (int i = 0; i < outputs.size(); i++) {
+                outputs.get(i).setVisible(true);
+                if (settings.fullscreen && !settings.overlay) {
+                    screens.get(i).setFullScreenWindow(outputs.get(i));
+                    // Transparent backgrounds need the window compositing of the Swing path
+                    if (!options.has("passive-rendering") && settings.mode != Settings.BackgroundMode.TRANSPARENT)
+                        outputs.get(i).startActiveRendering(settings);
+                }
             }
 
-            timerGUI.setCountdown(Duration.of(5, ChronoUnit.MINUTES));
+            clock.setCountdown(Duration.of(5, ChronoUnit.MINUTES));
+            startClusterSync(options, clock);
+            startControlServer(options, clock);
             controlGUI.setVisible(true);
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Selects the output displays from a list of device indices like {@code 0,2} or {@code all}.
+     * Without a selection the last device is used.
+     */
+    private static List<GraphicsDevice> selectScreens(GraphicsEnvironment env, String selection) {
+        var devices = env.getScreenDevices();
+        if (selection == null)
+            return List.of(devices[devices.length - 1]);
+        if (selection.equals("all"))
+            return List.of(devices);
+
+        var screens = new ArrayList<GraphicsDevice>();
+        for (String index : selection.split(",")) {
+            var i = Integer.parseInt(index.trim());
+            if (i < 0 || i >= devices.length)
+                throw new IllegalArgumentException("Display " + i + " does not exist, " + devices.length + " available");
+            screens.add(devices[i]);
+        }
+        return screens;
+    }
+
+    /**
+     * Joins the clock to a cluster if {@code --cluster=leader} or {@code --cluster=follower} is given.
+     * Peers are found through a multicast group unless the leader lists them with {@code --cluster-peers}
+     * and the followers listen with {@code --cluster-unicast}.
+     */
+    private static void startClusterSync(Options options, CountdownClock clock) {
+        var mode = options.get("cluster", null);
+        if (mode == null)
+            return;
+
+        try {
+            var role = ClusterSync.Role.valueOf(mode.toUpperCase());
+            var port = options.getInt("cluster-port", 4545);
+
+            InetAddress group = null;
+            var targets = new ArrayList<InetSocketAddress>();
+            var peers = options.get("cluster-peers", "");
+            if (!peers.isEmpty() || options.has("cluster-unicast")) {
+                for (String peer : peers.isEmpty() ? new String[0] : peers.split(",")) {
+                    var separator = peer.lastIndexOf(':');
+                    targets.add(separator < 0
+                            ? new InetSocketAddress(peer.trim(), port)
+                            : new InetSocketAddress(peer.substring(0, separator).trim(),
+                            Integer.parseInt(peer.substring(separator + 1).trim())));
+                }
+            } else {
+                group = InetAddress.getByName(options.get("cluster-group", "239.255.42.42"));
+            }
+
+            new ClusterSync(role, clock, port, group, targets).start();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error on joining cluster: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reports stalls of the event dispatch thread longer than {@code --watchdog} milliseconds (default 500, 0 to disable)
+     * to {@code --watchdog-file}.
+     */
+    private static void startWatchdog(Options options) {
+        var threshold = options.getInt("watchdog", 500);
+        if (threshold <= 0)
+            return;
+
+        var file = options.get("watchdog-file", Path.of(System.getProperty("java.io.tmpdir"), "SimpleCountdown-edt.log").toString());
+        new EdtWatchdog(threshold, Path.of(file)).start();
+    }
+
+    /**
+     * Accepts remote commands if {@code --control-port} is given. Only local clients can connect unless
+     * {@code --control-bind} names another address, e.g. {@code 0.0.0.0} for all interfaces.
+     */
+    private static void startControlServer(Options options, CountdownClock clock) {
+        if (!options.has("control-port"))
+            return;
+
+        try {
+            var bind = options.has("control-bind")
+                    ? InetAddress.getByName(options.get("control-bind", null))
+                    : InetAddress.getLoopbackAddress();
+            var server = new ControlServer(clock, new InetSocketAddress(bind, options.getInt("control-port", 8090)));
+            server.start();
+            System.out.println("Remote control on http://" + server.getAddress().getHostString() + ":"
+                    + server.getAddress().getPort()
+                    + " (/start, /stop, /reset, /preset, /target, /state)");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error on starting control server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renders the timer offscreen and streams it over HTTP, for machines without a display.
+     */
+    private static void runHeadless(Options options, SettingsStore store) throws IOException {
+        var size = options.getSize("size", new Dimension(1920, 1080));
+        var settings = loadOffscreenSettings(store, size);
+
+        var output = new OffscreenOutput(settings, size.width, size.height);
+        var server = new FrameServer(output, new InetSocketAddress(options.getInt("http-port", 8080)));
+
+        SwingUtilities.invokeLater(() -> {
+            var clock = new CountdownClock();
+            clock.addListener(output);
+            // Every frame is encoded, so sub-second layouts follow the stream rate instead of a display
+            clock.setFrameRate(options.getInt("fps", 25));
+            clock.setLayout(settings.timeLayout);
+            clock.setCountdown(options.getDuration("countdown", Duration.of(5, ChronoUnit.MINUTES)));
+
+            output.start();
+            startClusterSync(options, clock);
+            startControlServer(options, clock);
+            if (options.has("start"))
+                clock.start();
+        });
+
+        server.start();
+        System.out.println("Streaming countdown on http://localhost:" + server.getAddress().getPort()
+                + "/stream.mjpeg (snapshots: /snapshot.png, /snapshot.jpg)");
+    }
+
+    /**
+     * Loads the settings for rendering without a display. Nothing is shown before the first frame anyway, so the
+     * background image is decoded right away.
+     */
+    private static Settings loadOffscreenSettings(SettingsStore store, Dimension size) {
+        var bounds = new Rectangle(0, 0, size.width, size.height);
+
+        var settings = new Settings();
+        try {
+            settings.loadFrom(store.load(), bounds);
+        } catch (Exception e) {
+            settings.loadDefaults(bounds);
+            System.err.println("Error occurred on loading preferences. Falling back to default: " + e.getMessage());
+        }
+        settings.bounds = bounds;
+        ResourceCache.getDefault().setBudget(settings.cacheBudgetMB * 1024L * 1024L);
+
+        if (settings.imagePath != null) {
+            try {
+                var budget = settings.imageBudgetMB * 1024L * 1024L;
+                var image = new ImageDecoder(new File(settings.imagePath), size.width, size.height, budget).decode();
+                settings.backgroundImage = ResourceCache.getDefault().putDecoded(settings.imagePath, size.width,
+                        size.height, budget, image);
+            } catch (IOException e) {
+                System.err.println("Error on loading file " + settings.imagePath + ": " + e.getMessage());
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Renders a countdown to {@code --export=<path>}, a directory of PNG files or with {@code --export-format=raw}
+     * a single file of raw BGRA frames. Without a path they are written to {@code frames} or {@code frames.raw}.
+     */
+    private static void runExport(Options options, SettingsStore store) throws IOException {
+        var size = options.getSize("size", new Dimension(1920, 1080));
+        var frameRate = options.getInt("fps", 25);
+        var duration = options.getDuration("countdown", Duration.of(5, ChronoUnit.MINUTES));
+        var format = FrameExporter.Format.valueOf(options.get("export-format", "png").toUpperCase());
+        // A bare --export has no path, the frames then go to the working directory
+        var path = options.get("export", "true");
+        var target = Path.of(!path.equals("true") ? path : format == FrameExporter.Format.PNG ? "frames" : "frames.raw");
+
+        var settings = loadOffscreenSettings(store, size);
+        var exporter = new FrameExporter(settings, size.width, size.height, frameRate);
+        var frames = exporter.getFrameCount(duration);
+
+        // At least one thread is needed, whatever was passed
+        var threads = Math.max(1, options.getInt("export-threads", Runtime.getRuntime().availableProcessors()));
+        var pool = new ForkJoinPool(threads);
+        var start = System.nanoTime();
+        try {
+            var step = Math.max(1, frames / 20);
+            var reported = new AtomicInteger();
+            exporter.export(duration, format, target, pool, done -> {
+                var last = reported.get();
+                if (done / step > last / step && reported.compareAndSet(last, done))
+                    System.out.printf("%d / %d frames%n", done, frames);
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        var seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d frames (%dx%d at %d fps) to %s in %.1f s, %.1fx real time%n", frames,
+                size.width, size.height, frameRate, target, seconds, duration.toMillis() / 1000.0 / seconds);
+        if (format == FrameExporter.Format.RAW) {
+            System.out.printf("Encode with: ffmpeg -f rawvideo -pix_fmt bgra -s %dx%d -r %d -i %s out.mp4%n",
+                    size.width, size.height, frameRate, target);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.prefs.AbstractPreferences;
+
+/**
+ * Preferences node that lives only in memory, used as staging area for the settings file and in benchmarks.
+ */
+public class MemoryPreferences extends AbstractPreferences {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    private final Map<String, MemoryPreferences> children = new HashMap<>();
+
+    public MemoryPreferences() {
+        this(null, "");
+    }
+
+    private MemoryPreferences(MemoryPreferences parent, String name) {
+        super(parent, name);
+    }
+
+    @Override
+    protected void putSpi(String key, String value) {
+        this.values.put(key, value);
+    }
+
+    @Override
+    protected String getSpi(String key) {
+        return this.values.get(key);
+    }
+
+    @Override
+    protected void removeSpi(String key) {
+        this.values.remove(key);
+    }
+
+    @Override
+    protected void removeNodeSpi() {
+        this.values.clear();
+        if (this.parent() instanceof MemoryPreferences parent)
+            parent.children.remove(this.name());
+    }
+
+    @Override
+    protected String[] keysSpi() {
+        return this.values.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    protected String[] childrenNamesSpi() {
+        return this.children.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    protected AbstractPreferences childSpi(String name) {
+        return this.children.computeIfAbsent(name, n -> new MemoryPreferences(this, n));
+    }
+
+    @Override
+    protected void syncSpi() {
+    }
+
+    @Override
+    protected void flushSpi() {
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package data;
+
+import timer.TimeFormatter;
+
+import java.awt.*;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options in the form {@code --name=value} or {@code --flag}.
+ */
+public class Options {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    public Options(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+
+            var separator = arg.indexOf('=');
+            if (separator < 0) {
+                this.values.put(arg.substring(2), "true");
+            } else {
+                this.values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+    }
+
+    public boolean has(String name) {
+        return this.values.containsKey(name);
+    }
+
+    public String get(String name, String defaultValue) {
+        return this.values.getOrDefault(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        var value = this.values.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * Parses a size like {@code 1920x1080}.
+     */
+    public Dimension getSize(String name, Dimension defaultValue) {
+        var value = this.values.get(name);
+        if (value == null)
+            return defaultValue;
+
+        var parts = value.toLowerCase().split("x");
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Invalid size for --" + name + ": " + value);
+        return new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * Parses a duration like {@code 01:30:00}, {@code 05:00} or plain seconds.
+     */
+    public Duration getDuration(String name, Duration defaultValue) {
+        var value = this.values.get(name);
+        if (value == null)
+            return defaultValue;
+
+        return TimeFormatter.parseDuration(value);
+    }
+}
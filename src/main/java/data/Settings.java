@@ -16,10 +16,12 @@
  */
 package data;
 
-import javax.imageio.ImageIO;
+import timer.TimeFormatter;
+
 import java.awt.*;
-import java.io.File;
-import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 public class Settings {
@@ -74,7 +76,56 @@ public class Settings {
 
     public boolean fullscreen;
 
-    public void loadFrom(Preferences preferences, Rectangle defaultBounds) throws IOException, IllegalArgumentException {
+    // Small always-on-top window around the text, e.g. on top of a presentation
+    public boolean overlay;
+
+    public TimeFormatter.Layout timeLayout;
+
+    // Scale the text to the largest size that fits inside the margins instead of using the font size
+    public boolean autoFit;
+
+    // Upper limit for the decoded background pixels in megabytes
+    public int imageBudgetMB;
+
+    // Upper limit for the render resources kept warm for recently used profiles in megabytes
+    public int cacheBudgetMB;
+
+    // Named looks, sorted by name
+    public Map<String, Settings> profiles = new TreeMap<>();
+
+    public void loadFrom(Preferences preferences, Rectangle defaultBounds) throws IllegalArgumentException {
+        this.loadAppearanceFrom(preferences);
+
+        var x = preferences.getInt("boundsX", defaultBounds.x);
+        var y = preferences.getInt("boundsY", defaultBounds.y);
+        var w = preferences.getInt("boundsW", defaultBounds.width);
+        var h = preferences.getInt("boundsH", defaultBounds.height);
+
+        // The image itself is decoded asynchronously once the windows are shown
+        this.backgroundImage = null;
+
+        this.bounds = new Rectangle(x, y, w, h);
+        this.fullscreen = preferences.getBoolean("fullscreen", true);
+        this.overlay = preferences.getBoolean("overlay", false);
+        this.imageBudgetMB = preferences.getInt("imageBudgetMB", 64);
+        this.cacheBudgetMB = preferences.getInt("cacheBudgetMB", 256);
+
+        this.profiles = new TreeMap<>();
+        try {
+            if (preferences.nodeExists("profiles")) {
+                var profilesNode = preferences.node("profiles");
+                for (String name : profilesNode.childrenNames()) {
+                    var profile = new Settings();
+                    profile.loadAppearanceFrom(profilesNode.node(name));
+                    this.profiles.put(name, profile);
+                }
+            }
+        } catch (BackingStoreException e) {
+            throw new IllegalArgumentException("Cannot read profiles: " + e.getMessage(), e);
+        }
+    }
+
+    private void loadAppearanceFrom(Preferences preferences) throws IllegalArgumentException {
         var fontSize = preferences.getInt("fontSize", 40);
         var fontName = preferences.get("fontName", Font.SERIF);
         var fontStyle = preferences.getInt("fontStyle", Font.PLAIN);
@@ -89,21 +140,39 @@ public class Settings {
         this.marginX = preferences.getInt("marginX", 50);
         this.marginY = preferences.getInt("marginY", 50);
 
-        var x = preferences.getInt("boundsX", defaultBounds.x);
-        var y = preferences.getInt("boundsY", defaultBounds.y);
-        var w = preferences.getInt("boundsW", defaultBounds.width);
-        var h = preferences.getInt("boundsH", defaultBounds.height);
-
         this.imagePath = preferences.get("imagePath", null);
-        if (this.imagePath != null) {
-            this.backgroundImage = ImageIO.read(new File(this.imagePath));
-        }
-
-        this.bounds = new Rectangle(x, y, w, h);
-        this.fullscreen = preferences.getBoolean("fullscreen", true);
+        this.timeLayout = getEnumValue("timeLayout", preferences, TimeFormatter.Layout.class, TimeFormatter.Layout.HH_MM_SS);
+        this.autoFit = preferences.getBoolean("autoFit", false);
     }
 
     public void saveTo(Preferences preferences) {
+        this.saveAppearanceTo(preferences);
+
+        preferences.putInt("boundsX", bounds.x);
+        preferences.putInt("boundsY", bounds.y);
+        preferences.putInt("boundsW", bounds.width);
+        preferences.putInt("boundsH", bounds.height);
+
+        preferences.putBoolean("fullscreen", this.fullscreen);
+        preferences.putBoolean("overlay", this.overlay);
+        preferences.putInt("imageBudgetMB", imageBudgetMB);
+        preferences.putInt("cacheBudgetMB", cacheBudgetMB);
+
+        var profilesNode = preferences.node("profiles");
+        try {
+            for (String name : profilesNode.childrenNames()) {
+                if (!this.profiles.containsKey(name))
+                    profilesNode.node(name).removeNode();
+            }
+        } catch (BackingStoreException e) {
+            throw new IllegalStateException("Cannot update profiles: " + e.getMessage(), e);
+        }
+        for (Map.Entry<String, Settings> profile : this.profiles.entrySet()) {
+            profile.getValue().saveAppearanceTo(profilesNode.node(profile.getKey()));
+        }
+    }
+
+    private void saveAppearanceTo(Preferences preferences) {
         preferences.put("fontName", font.getName());
         preferences.putInt("fontStyle", font.getStyle());
         preferences.putInt("fontSize", font.getSize());
@@ -117,15 +186,40 @@ public class Settings {
         preferences.putInt("marginX", marginX);
         preferences.putInt("marginY", marginY);
 
-        preferences.putInt("boundsX", bounds.x);
-        preferences.putInt("boundsY", bounds.y);
-        preferences.putInt("boundsW", bounds.width);
-        preferences.putInt("boundsH", bounds.height);
-
-        if (imagePath != null)
+        if (imagePath != null) {
             preferences.put("imagePath", imagePath);
+        } else {
+            preferences.remove("imagePath");
+        }
 
-        preferences.putBoolean("fullscreen", this.fullscreen);
+        preferences.put("timeLayout", timeLayout.name());
+        preferences.putBoolean("autoFit", autoFit);
+    }
+
+    /**
+     * Copy of the look (font, colors, background and layout) to be stored as a profile.
+     */
+    public Settings copyAppearance() {
+        var copy = new Settings();
+        copy.applyAppearance(this);
+        return copy;
+    }
+
+    /**
+     * Takes over the look of a profile, the window bounds and budgets stay unchanged.
+     * The background image has to be loaded again if the path differs.
+     */
+    public void applyAppearance(Settings profile) {
+        this.font = profile.font;
+        this.textColor = profile.textColor;
+        this.mode = profile.mode;
+        this.imagePath = profile.imagePath;
+        this.backgroundColor = profile.backgroundColor;
+        this.alignment = profile.alignment;
+        this.marginX = profile.marginX;
+        this.marginY = profile.marginY;
+        this.timeLayout = profile.timeLayout;
+        this.autoFit = profile.autoFit;
     }
 
     public void loadDefaults(Rectangle defaultBounds) {
@@ -143,6 +237,12 @@ public class Settings {
         this.backgroundImage = null;
         this.bounds = new Rectangle(defaultBounds);
         this.fullscreen = true;
+        this.overlay = false;
+        this.timeLayout = TimeFormatter.Layout.HH_MM_SS;
+        this.autoFit = false;
+        this.imageBudgetMB = 64;
+        this.cacheBudgetMB = 256;
+        this.profiles = new TreeMap<>();
     }
 
     private <E extends Enum<E>> E getEnumValue(String key, Preferences preferences, Class<E> enumClass, E defaultValue) {
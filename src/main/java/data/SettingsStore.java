@@ -0,0 +1,209 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package data;
+
+import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Persists the settings in a properties file.
+ * <p>
+ * Changes are collected in memory and written in one batch once they stop arriving for a moment, so dragging
+ * a margin field ends up as a single write, and nothing is written if the values did not change. The file is
+ * replaced by an atomic rename, so a crash leaves either the previous or the new version but never a partial one.
+ * Without a file the values are taken over from the Preferences node used by earlier versions.
+ * <p>
+ * Values of child nodes such as profiles are stored with their path, e.g. {@code profiles/Sponsor/fontName}.
+ */
+public class SettingsStore {
+
+    private static final int DEBOUNCE_MILLIS = 500;
+
+    private final Path file;
+
+    private final Preferences legacy;
+
+    // Settings are written into this node with their usual key mapping, then copied into the file
+    private final MemoryPreferences node = new MemoryPreferences();
+
+    private final Timer debounce;
+
+    private final ExecutorService writer;
+
+    private Settings pending;
+
+    // Content of the file as last written or loaded
+    private volatile Properties written;
+
+    /**
+     * @param legacy Preferences node to migrate from if the file does not exist yet, may be null
+     */
+    public SettingsStore(Path file, Preferences legacy) {
+        this.file = file;
+        this.legacy = legacy;
+
+        this.debounce = new Timer(DEBOUNCE_MILLIS, e -> this.submit());
+        this.debounce.setRepeats(false);
+
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "SettingsStore-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Path defaultFile() {
+        return Path.of(System.getProperty("user.home"), ".SimpleCountdown", "settings.properties");
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * Reads the stored values, {@link Settings#loadFrom} takes them from the returned node.
+     */
+    public Preferences load() throws IOException {
+        if (Files.exists(this.file)) {
+            var properties = new Properties();
+            properties.load(new StringReader(Files.readString(this.file, StandardCharsets.UTF_8)));
+            for (String key : properties.stringPropertyNames()) {
+                var separator = key.lastIndexOf('/');
+                var target = separator < 0 ? this.node : this.node.node(key.substring(0, separator));
+                target.put(key.substring(separator + 1), properties.getProperty(key));
+            }
+            this.written = properties;
+        } else if (this.legacy != null) {
+            try {
+                for (String key : this.legacy.keys()) {
+                    var value = this.legacy.get(key, null);
+                    if (value != null)
+                        this.node.put(key, value);
+                }
+            } catch (BackingStoreException e) {
+                throw new IOException("Cannot read preferences: " + e.getMessage(), e);
+            }
+        }
+        return this.node;
+    }
+
+    /**
+     * Records that the settings changed. They are written once no further change arrives within the debounce delay.
+     * Must be called on the event dispatch thread.
+     */
+    public void changed(Settings settings) {
+        this.pending = settings;
+        this.debounce.restart();
+    }
+
+    /**
+     * Writes pending changes right away and waits until they are on disk, e.g. before exiting.
+     */
+    public void flush() {
+        this.debounce.stop();
+        var write = this.submit();
+        if (write == null)
+            return;
+
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            // already reported by the writer
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Future<?> submit() {
+        if (this.pending == null)
+            return null;
+
+        this.pending.saveTo(this.node);
+        this.pending = null;
+
+        var properties = new Properties();
+        try {
+            collect(this.node, "", properties);
+        } catch (BackingStoreException e) {
+            // cannot happen for a node in memory
+            throw new IllegalStateException(e);
+        }
+        if (properties.equals(this.written))
+            return null;
+
+        return this.writer.submit(() -> {
+            try {
+                write(this.file, properties);
+                this.written = properties;
+            } catch (IOException e) {
+                System.err.println("Error on saving settings to " + this.file + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static void collect(Preferences node, String prefix, Properties properties) throws BackingStoreException {
+        for (String key : node.keys()) {
+            properties.setProperty(prefix + key, node.get(key, ""));
+        }
+        for (String child : node.childrenNames()) {
+            collect(node.node(child), prefix + child + "/", properties);
+        }
+    }
+
+    private static void write(Path file, Properties properties) throws IOException {
+        var out = new ByteArrayOutputStream(1024);
+        properties.store(out, "SimpleCountdown settings");
+
+        var parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        // Fully written and synced before it replaces the old file
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
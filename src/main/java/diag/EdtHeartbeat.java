@@ -0,0 +1,174 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package diag;
+
+import javax.swing.*;
+import java.util.Arrays;
+
+/**
+ * Posts a marker event and measures how long it takes until the event dispatch thread runs it.
+ * <p>
+ * A single daemon thread serves the queue wait metric and the stall detection of the {@link EdtWatchdog}. Only one
+ * marker is in flight, so a blocked event dispatch thread is not flooded with probes. Observers are called on the
+ * heartbeat thread, never on the event dispatch thread, so they may block or write files. Without observers no
+ * marker is posted and the thread waits.
+ */
+final class EdtHeartbeat {
+
+    interface Observer {
+        /**
+         * Called after the marker ran.
+         */
+        void arrived(long waitNanos);
+
+        /**
+         * Called repeatedly while the marker waits, at least every check interval of the observer.
+         */
+        default void waiting(long waitNanos) {
+        }
+    }
+
+    private static final long POST_INTERVAL_MILLIS = 100;
+
+    private static final EdtHeartbeat INSTANCE = new EdtHeartbeat();
+
+    private final Runnable marker = this::markerRan;
+
+    private final Object lock = new Object();
+
+    private Observer[] observers = new Observer[0];
+
+    private long[] checkIntervals = new long[0];
+
+    private long checkIntervalMillis = POST_INTERVAL_MILLIS;
+
+    private long postedNanos;
+
+    private long waitNanos;
+
+    private boolean pending = false;
+
+    private Thread thread;
+
+    private EdtHeartbeat() {
+    }
+
+    /**
+     * Adds an observer and starts the heartbeat thread with the first one.
+     *
+     * @param checkIntervalMillis how often {@link Observer#waiting(long)} has to be called while the marker waits
+     */
+    static void addObserver(Observer observer, long checkIntervalMillis) {
+        INSTANCE.add(observer, checkIntervalMillis);
+    }
+
+    /**
+     * Removes an observer, the heartbeat pauses once none are left.
+     */
+    static void removeObserver(Observer observer) {
+        INSTANCE.remove(observer);
+    }
+
+    private void add(Observer observer, long checkIntervalMillis) {
+        synchronized (this.lock) {
+            this.observers = Arrays.copyOf(this.observers, this.observers.length + 1);
+            this.observers[this.observers.length - 1] = observer;
+            this.checkIntervals = Arrays.copyOf(this.checkIntervals, this.checkIntervals.length + 1);
+            this.checkIntervals[this.checkIntervals.length - 1] = checkIntervalMillis;
+            this.updateCheckInterval();
+
+            if (this.thread == null) {
+                this.thread = new Thread(this::run, "EdtHeartbeat");
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+            this.lock.notifyAll();
+        }
+    }
+
+    private void remove(Observer observer) {
+        synchronized (this.lock) {
+            for (int i = 0; i < this.observers.length; i++) {
+                if (this.observers[i] == observer) {
+                    var last = this.observers.length - 1;
+                    this.observers[i] = this.observers[last];
+                    this.checkIntervals[i] = this.checkIntervals[last];
+                    this.observers = Arrays.copyOf(this.observers, last);
+                    this.checkIntervals = Arrays.copyOf(this.checkIntervals, last);
+                    this.updateCheckInterval();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void updateCheckInterval() {
+        this.checkIntervalMillis = POST_INTERVAL_MILLIS;
+        for (long interval : this.checkIntervals) {
+            this.checkIntervalMillis = Math.max(1, Math.min(this.checkIntervalMillis, interval));
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                synchronized (this.lock) {
+                    while (this.observers.length == 0)
+                        this.lock.wait();
+                    this.pending = true;
+                    this.postedNanos = System.nanoTime();
+                }
+                SwingUtilities.invokeLater(this.marker);
+
+                // Observers are called outside of the lock, the marker never waits for them
+                while (true) {
+                    Observer[] observers;
+                    boolean arrived;
+                    long wait;
+                    synchronized (this.lock) {
+                        if (this.pending)
+                            this.lock.wait(this.checkIntervalMillis);
+                        observers = this.observers;
+                        arrived = !this.pending;
+                        wait = arrived ? this.waitNanos : System.nanoTime() - this.postedNanos;
+                    }
+
+                    for (Observer observer : observers) {
+                        if (arrived) {
+                            observer.arrived(wait);
+                        } else {
+                            observer.waiting(wait);
+                        }
+                    }
+                    if (arrived)
+                        break;
+                }
+                Thread.sleep(POST_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void markerRan() {
+        synchronized (this.lock) {
+            this.waitNanos = System.nanoTime() - this.postedNanos;
+            this.pending = false;
+            this.lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package diag;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+/**
+ * Detects stalls of the event dispatch thread and writes what it was doing to a diagnostic file.
+ * <p>
+ * The {@link EdtHeartbeat} shared with the metrics reports a stall if its marker is not run within the threshold.
+ * The report contains the stack of the event dispatch thread at that moment and the most recently
+ * dispatched events, which a pushed event queue records into a fixed ring buffer without allocating.
+ * The file is rolled over to a single backup when it grows too large.
+ */
+public final class EdtWatchdog {
+
+    // Power of two, so the index wraps correctly when the counter overflows
+    private static final int HISTORY = 256;
+
+    // Events listed in a report
+    private static final int REPORTED_EVENTS = 32;
+
+    private static final long MAX_FILE_BYTES = 1024 * 1024;
+
+    private final long thresholdNanos;
+
+    private final Path file;
+
+    // Ring buffer of dispatched events, only written by the event dispatch thread
+    private final long[] eventEnd = new long[HISTORY];
+
+    private final long[] eventDuration = new long[HISTORY];
+
+    private final int[] eventId = new int[HISTORY];
+
+    private final Class<?>[] eventType = new Class<?>[HISTORY];
+
+    private final Class<?>[] eventSource = new Class<?>[HISTORY];
+
+    private volatile int eventCount = 0;
+
+    private volatile Thread dispatchThread;
+
+    // Only used by the heartbeat thread
+    private boolean reported = false;
+
+    /**
+     * @param file diagnostic file, reports are appended
+     */
+    public EdtWatchdog(long thresholdMillis, Path file) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+        this.file = file;
+    }
+
+    public void start() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimingEventQueue());
+
+        EdtHeartbeat.addObserver(new EdtHeartbeat.Observer() {
+            @Override
+            public void arrived(long waitNanos) {
+                EdtWatchdog.this.recovered(waitNanos);
+            }
+
+            @Override
+            public void waiting(long waitNanos) {
+                EdtWatchdog.this.waiting(waitNanos);
+            }
+        }, Math.max(10, this.thresholdNanos / 4_000_000));
+    }
+
+    private void waiting(long waitNanos) {
+        if (!this.reported && waitNanos > this.thresholdNanos) {
+            this.reported = true;
+            this.report(waitNanos);
+        }
+    }
+
+    private void recovered(long waitNanos) {
+        if (this.reported) {
+            this.reported = false;
+            this.write(String.format("%s event dispatch thread recovered after %.1f ms%n%n",
+                    LocalDateTime.now(), waitNanos / 1e6));
+        }
+    }
+
+    private void report(long stalledNanos) {
+        var now = System.nanoTime();
+        var out = new StringBuilder(4096);
+        out.append(String.format("%s event dispatch thread stalled for %.1f ms%n",
+                LocalDateTime.now(), stalledNanos / 1e6));
+
+        var thread = this.dispatchThread;
+        if (thread != null) {
+            out.append("Stack of ").append(thread.getName()).append(" (").append(thread.getState()).append("):\n");
+            for (StackTraceElement element : thread.getStackTrace()) {
+                out.append("    at ").append(element).append('\n');
+            }
+        }
+
+        // Entries may be overwritten while they are read, the report is best effort
+        var count = this.eventCount;
+        out.append("Recent events (ended ms ago, duration ms, type, source):\n");
+        for (int i = count - 1; i >= Math.max(0, count - REPORTED_EVENTS); i--) {
+            var index = i & (HISTORY - 1);
+            out.append(String.format("    %9.1f %9.3f  %s #%d  %s%n",
+                    (now - this.eventEnd[index]) / 1e6, this.eventDuration[index] / 1e6,
+                    name(this.eventType[index]), this.eventId[index], name(this.eventSource[index])));
+        }
+        out.append('\n');
+
+        this.write(out.toString());
+        System.err.printf("Event dispatch thread stalled for %.1f ms, see %s%n", stalledNanos / 1e6, this.file);
+    }
+
+    private static String name(Class<?> type) {
+        return type != null ? type.getName() : "-";
+    }
+
+    private void write(String text) {
+        try {
+            if (Files.exists(this.file) && Files.size(this.file) > MAX_FILE_BYTES) {
+                Files.move(this.file, this.file.resolveSibling(this.file.getFileName() + ".1"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.writeString(this.file, text, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Error on writing diagnostics to " + this.file + ": " + e.getMessage());
+        }
+    }
+
+    private final class TimingEventQueue extends EventQueue {
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            EdtWatchdog.this.dispatchThread = Thread.currentThread();
+            var start = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                var end = System.nanoTime();
+                var count = EdtWatchdog.this.eventCount;
+                var index = count & (HISTORY - 1);
+                EdtWatchdog.this.eventEnd[index] = end;
+                EdtWatchdog.this.eventDuration[index] = end - start;
+                EdtWatchdog.this.eventId[index] = event.getID();
+                EdtWatchdog.this.eventType[index] = event.getClass();
+                EdtWatchdog.this.eventSource[index] = event.getSource() != null ? event.getSource().getClass() : null;
+                EdtWatchdog.this.eventCount = count + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package diag;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds. Every power of two is split into eight buckets,
+ * which keeps the relative error below 12.5% from nanoseconds up to several minutes.
+ * <p>
+ * Recording is lock-free and does not allocate, so it can stay enabled on the paint and tick paths.
+ */
+public final class Histogram implements HistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values up to 2^40 ns (about 18 minutes), larger ones land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        var value = Math.max(0, nanos);
+        this.buckets.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+
+        var current = this.max.get();
+        while (value > current && !this.max.compareAndSet(current, value)) {
+            current = this.max.get();
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+
+        var sub = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        var exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        var sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Smallest value that at least the given fraction of the recorded values does not exceed,
+     * reported as the upper end of its bucket.
+     */
+    public long percentile(double fraction) {
+        var count = this.count.get();
+        if (count == 0)
+            return 0;
+
+        var rank = (long) Math.ceil(fraction * count);
+        var seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                var upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    public long getSumNanos() {
+        return this.sum.get();
+    }
+
+    public long getMaxNanos() {
+        return this.max.get();
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        var count = this.count.get();
+        return count > 0 ? this.sum.get() / 1000.0 / count : 0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return this.max.get() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return this.percentile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return this.percentile(0.9) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return this.percentile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return this.percentile(0.999) / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package diag;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide instrumentation, published as MBeans under {@code SimpleCountdown:*} and as text.
+ * <p>
+ * All recording methods are lock-free and do not allocate, so they stay enabled in production.
+ */
+public final class Metrics {
+
+    /**
+     * Delay between the scheduled second boundary and the clock callback.
+     */
+    public static final Histogram TICK_LATENESS = new Histogram();
+
+    /**
+     * Duration of painting the timer, on screen or offscreen.
+     */
+    public static final Histogram PAINT_TIME = new Histogram();
+
+    /**
+     * Time an event waits in the event queue before the event dispatch thread runs it.
+     */
+    public static final Histogram EDT_QUEUE_WAIT = new Histogram();
+
+    /**
+     * Duration of decoding a background image.
+     */
+    public static final Histogram IMAGE_DECODE = new Histogram();
+
+    public static final AtomicLong DECODED_IMAGE_BYTES = new AtomicLong();
+
+    public static final AtomicLong SCALED_IMAGE_BYTES = new AtomicLong();
+
+    public static final AtomicLong GLYPH_ATLAS_BYTES = new AtomicLong();
+
+    public static final AtomicLong ANIMATION_BYTES = new AtomicLong();
+
+    private static boolean registered = false;
+
+    // Clocks waiting for their next tick, the event queue wait is only measured while there are any
+    private static int activeClocks = 0;
+
+    private static final EdtHeartbeat.Observer QUEUE_WAIT_OBSERVER = EDT_QUEUE_WAIT::record;
+
+    private Metrics() {
+    }
+
+    /**
+     * Size of the pixel data of an image, 0 for null or images without accessible pixels.
+     */
+    public static long imageBytes(Image image) {
+        if (!(image instanceof BufferedImage buffered))
+            return 0;
+        var buffer = buffered.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Registers the MBeans and measures the event queue wait from then on while a clock is active.
+     * Calling it again has no effect.
+     */
+    public static synchronized void register() {
+        if (registered)
+            return;
+        registered = true;
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(TICK_LATENESS, histogramName("TickLateness"));
+            server.registerMBean(PAINT_TIME, histogramName("PaintTime"));
+            server.registerMBean(EDT_QUEUE_WAIT, histogramName("EdtQueueWait"));
+            server.registerMBean(IMAGE_DECODE, histogramName("ImageDecode"));
+            server.registerMBean(new ImageMemory(), new ObjectName("SimpleCountdown:type=ImageMemory"));
+        } catch (JMException e) {
+            System.err.println("Error on registering metrics: " + e.getMessage());
+        }
+
+        if (activeClocks > 0)
+            EdtHeartbeat.addObserver(QUEUE_WAIT_OBSERVER, Long.MAX_VALUE);
+    }
+
+    /**
+     * Called when a clock starts or stops waiting for its next tick. An idle application does not wake up the
+     * event dispatch thread only to measure how fast it would respond.
+     */
+    public static synchronized void clockActive(boolean active) {
+        activeClocks += active ? 1 : -1;
+        if (!registered)
+            return;
+
+        // Shared with the stall detection of the watchdog, which needs the waits as they grow
+        if (active && activeClocks == 1) {
+            EdtHeartbeat.addObserver(QUEUE_WAIT_OBSERVER, Long.MAX_VALUE);
+        } else if (!active && activeClocks == 0) {
+            EdtHeartbeat.removeObserver(QUEUE_WAIT_OBSERVER);
+        }
+    }
+
+    private static ObjectName histogramName(String name) throws JMException {
+        return new ObjectName("SimpleCountdown:type=Histogram,name=" + name);
+    }
+
+    /**
+     * All metrics in the Prometheus text format.
+     */
+    public static String toText() {
+        var out = new StringBuilder(2048);
+        appendHistogram(out, "countdown_tick_lateness_seconds", TICK_LATENESS);
+        appendHistogram(out, "countdown_paint_seconds", PAINT_TIME);
+        appendHistogram(out, "countdown_edt_queue_wait_seconds", EDT_QUEUE_WAIT);
+        appendHistogram(out, "countdown_image_decode_seconds", IMAGE_DECODE);
+
+        out.append("# TYPE countdown_image_bytes gauge\n");
+        appendGauge(out, "decoded", DECODED_IMAGE_BYTES.get());
+        appendGauge(out, "scaled", SCALED_IMAGE_BYTES.get());
+        appendGauge(out, "glyph_atlas", GLYPH_ATLAS_BYTES.get());
+        appendGauge(out, "animation", ANIMATION_BYTES.get());
+        return out.toString();
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, Histogram histogram) {
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.percentile(quantile))).append('\n');
+        }
+        out.append(name).append("_sum ").append(seconds(histogram.getSumNanos())).append('\n');
+        out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        out.append(name.replace("_seconds", "_max_seconds")).append(' ')
+                .append(seconds(histogram.getMaxNanos())).append('\n');
+    }
+
+    private static void appendGauge(StringBuilder out, String kind, long bytes) {
+        out.append("countdown_image_bytes{kind=\"").append(kind).append("\"} ").append(bytes).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static final class ImageMemory implements ImageMemoryMXBean {
+
+        @Override
+        public long getDecodedBytes() {
+            return DECODED_IMAGE_BYTES.get();
+        }
+
+        @Override
+        public long getScaledBytes() {
+            return SCALED_IMAGE_BYTES.get();
+        }
+
+        @Override
+        public long getGlyphAtlasBytes() {
+            return GLYPH_ATLAS_BYTES.get();
+        }
+
+        @Override
+        public long getAnimationBytes() {
+            return ANIMATION_BYTES.get();
+        }
+
+        @Override
+        public long getTotalBytes() {
+            return this.getDecodedBytes() + this.getScaledBytes() + this.getGlyphAtlasBytes() + this.getAnimationBytes();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import data.Settings;
+import diag.Metrics;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+
+/**
+ * Draws a fullscreen output on its own render thread through a {@link BufferStrategy} instead of Swing's repaint
+ * manager.
+ * <p>
+ * Page flipping is used if the device supports it, otherwise the strategy blits the back buffer. The event dispatch
+ * thread only hands over the new text or settings, so a busy control window cannot delay a frame. The back buffer
+ * has no defined content after a flip, so every frame is drawn completely, at most once per display refresh.
+ */
+public class ActiveRenderer {
+
+    private final Window window;
+
+    private final TimerRenderer renderer;
+
+    private final BufferStrategy strategy;
+
+    private final long framePeriodNanos;
+
+    private final Object lock = new Object();
+
+    private final char[] pendingText = new char[32];
+
+    private int pendingLength = -1;
+
+    private Settings pendingSettings;
+
+    private boolean frameRequested = true;
+
+    private volatile boolean closed = false;
+
+    private final Thread thread;
+
+    private ActiveRenderer(Window window, TimerRenderer renderer, BufferStrategy strategy, int refreshRate) {
+        this.window = window;
+        this.renderer = renderer;
+        this.strategy = strategy;
+        this.framePeriodNanos = 1_000_000_000L / (refreshRate > 0 ? refreshRate : 60);
+
+        this.thread = new Thread(this::run, "TimerGUI-Render");
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.MAX_PRIORITY - 1);
+    }
+
+    /**
+     * Takes over the painting of a displayable window.
+     *
+     * @return the started renderer, or null if the window cannot be rendered actively and Swing has to paint it
+     */
+    public static ActiveRenderer start(Window window, TimerRenderer renderer) {
+        BufferStrategy strategy;
+        try {
+            var flipping = new BufferCapabilities(new ImageCapabilities(true), new ImageCapabilities(true),
+                    BufferCapabilities.FlipContents.UNDEFINED);
+            try {
+                window.createBufferStrategy(2, flipping);
+            } catch (AWTException e) {
+                // No page flipping on this device, the default strategy blits
+                window.createBufferStrategy(2);
+            }
+            strategy = window.getBufferStrategy();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            System.err.println("Active rendering not available: " + e.getMessage());
+            return null;
+        }
+
+        var device = window.getGraphicsConfiguration().getDevice();
+        var active = new ActiveRenderer(window, renderer, strategy, device.getDisplayMode().getRefreshRate());
+        window.setIgnoreRepaint(true);
+        active.thread.start();
+        return active;
+    }
+
+    public boolean isPageFlipping() {
+        return this.strategy.getCapabilities().isPageFlipping();
+    }
+
+    public void setText(char[] text, int length) {
+        synchronized (this.lock) {
+            this.pendingLength = Math.min(length, this.pendingText.length);
+            System.arraycopy(text, 0, this.pendingText, 0, this.pendingLength);
+            this.frameRequested = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Hands over changed settings. The render thread works on a copy, so the control window can keep changing
+     * the original.
+     */
+    public void updateSettings(Settings settings) {
+        var copy = settings.copyAppearance();
+        copy.backgroundImage = settings.backgroundImage;
+        copy.bounds = settings.bounds;
+        synchronized (this.lock) {
+            this.pendingSettings = copy;
+            this.frameRequested = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    public void requestFrame() {
+        synchronized (this.lock) {
+            this.frameRequested = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the render thread and waits for it, so the renderer can be used or flushed by the caller afterwards.
+     * Swing paints the window again.
+     */
+    public void close() {
+        this.closed = true;
+        this.thread.interrupt();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.window.setIgnoreRepaint(false);
+    }
+
+    private void run() {
+        var config = this.window.getGraphicsConfiguration();
+        var lastFrame = 0L;
+        try {
+            while (!this.closed) {
+                Settings settings;
+                synchronized (this.lock) {
+                    while (!this.frameRequested) {
+                        this.lock.wait();
+                    }
+                    this.frameRequested = false;
+                    settings = this.pendingSettings;
+                    this.pendingSettings = null;
+                    if (this.pendingLength >= 0) {
+                        this.renderer.setText(this.pendingText, this.pendingLength);
+                        this.pendingLength = -1;
+                    }
+                }
+
+                var width = this.window.getWidth();
+                var height = this.window.getHeight();
+                if (settings != null)
+                    this.renderer.updateSettings(settings, width, height, config);
+
+                // Changes arriving faster than the display refreshes end up in the next frame
+                var wait = lastFrame + this.framePeriodNanos - System.nanoTime();
+                if (wait > 0)
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+
+                var start = System.nanoTime();
+                this.render(width, height, config);
+                lastFrame = start;
+                Metrics.PAINT_TIME.record(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            this.strategy.dispose();
+        }
+    }
+
+    private void render(int width, int height, GraphicsConfiguration config) {
+        do {
+            do {
+                var g = this.strategy.getDrawGraphics();
+                try {
+                    g.setColor(Color.BLACK);
+                    g.fillRect(0, 0, width, height);
+                    this.renderer.paint(g, width, height, config);
+                } finally {
+                    g.dispose();
+                }
+            } while (this.strategy.contentsRestored());
+
+            this.strategy.show();
+        } while (this.strategy.contentsLost());
+
+        // Flush the pipeline, so the frame is on screen now and not with the next one
+        Toolkit.getDefaultToolkit().sync();
+    }
+}
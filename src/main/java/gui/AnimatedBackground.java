@@ -0,0 +1,375 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import diag.Metrics;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Plays an animated GIF as background.
+ * <p>
+ * Frames are composited and scaled to the size of every output on a decoder thread, as images compatible with
+ * the output device, so painting a frame is a plain copy. If the whole animation fits into
+ * the memory budget every frame is kept, otherwise the decoder only runs a bounded number of frames ahead of
+ * playback and starts over for the next loop. The event dispatch thread only swaps the current frame.
+ */
+public class AnimatedBackground {
+
+    // Browsers treat very short delays as "as fast as possible" and slow them down, so do we
+    private static final int MIN_DELAY_MILLIS = 20;
+
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+
+    /**
+     * Size of an output the frames are prepared for.
+     *
+     * @param config device of the output, null for plain ARGB images
+     */
+    public record Target(int width, int height, GraphicsConfiguration config) {
+    }
+
+    // One image per target
+    private record Frame(BufferedImage[] images, int delayMillis) {
+    }
+
+    private final File file;
+
+    private final Target[] targets;
+
+    private final long budgetBytes;
+
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    private final Timer timer;
+
+    private final Object lock = new Object();
+
+    // Decoded frames waiting for playback (streaming) or all frames of the animation (cached)
+    private final ArrayDeque<Frame> ahead = new ArrayDeque<>();
+
+    private Frame[] cached;
+
+    private int capacity;
+
+    private int playIndex = 0;
+
+    private volatile Frame current;
+
+    private volatile boolean closed = false;
+
+    private Thread decoder;
+
+    /**
+     * @param targets outputs to prepare frames for, outputs of the same size and device share their frames
+     */
+    public AnimatedBackground(File file, List<Target> targets, long budgetBytes) {
+        this.file = file;
+        this.targets = targets.stream()
+                .map(target -> new Target(Math.max(1, target.width), Math.max(1, target.height), target.config))
+                .distinct()
+                .toArray(Target[]::new);
+        this.budgetBytes = budgetBytes;
+
+        this.timer = new Timer(DEFAULT_DELAY_MILLIS, e -> this.advance());
+        this.timer.setRepeats(false);
+    }
+
+    public void addFrameListener(Runnable listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeFrameListener(Runnable listener) {
+        this.listeners.remove(listener);
+    }
+
+    public void start() {
+        this.decoder = new Thread(this::decode, "AnimatedBackground-Decoder");
+        this.decoder.setDaemon(true);
+        this.decoder.setPriority(Thread.MIN_PRIORITY);
+        this.decoder.start();
+    }
+
+    public void close() {
+        this.closed = true;
+        this.timer.stop();
+        if (this.decoder != null)
+            this.decoder.interrupt();
+
+        synchronized (this.lock) {
+            this.ahead.forEach(AnimatedBackground::release);
+            this.ahead.clear();
+            if (this.cached != null) {
+                for (Frame frame : this.cached) {
+                    if (frame != null)
+                        release(frame);
+                }
+                this.cached = null;
+            } else if (this.current != null) {
+                release(this.current);
+            }
+            this.current = null;
+            this.lock.notifyAll();
+        }
+        this.listeners.clear();
+    }
+
+    /**
+     * Current frame scaled to the given output size, null until the first frame is decoded. Falls back to the
+     * frame of another target if the size was not known when the animation was created.
+     */
+    public BufferedImage getCurrentFrame(int width, int height) {
+        var frame = this.current;
+        if (frame == null)
+            return null;
+
+        for (int i = 0; i < this.targets.length; i++) {
+            if (this.targets[i].width == width && this.targets[i].height == height)
+                return frame.images[i];
+        }
+        return frame.images[0];
+    }
+
+    private void advance() {
+        if (this.closed)
+            return;
+
+        Frame next;
+        synchronized (this.lock) {
+            if (this.cached != null) {
+                next = this.cached[this.playIndex];
+                if (next != null)
+                    this.playIndex = (this.playIndex + 1) % this.cached.length;
+            } else {
+                next = this.ahead.poll();
+                this.lock.notifyAll();
+            }
+        }
+
+        if (next != null) {
+            var previous = this.current;
+            this.current = next;
+            // In streaming mode the frame that was on screen is not needed anymore
+            if (this.cached == null && previous != null)
+                release(previous);
+
+            for (Runnable listener : this.listeners) {
+                listener.run();
+            }
+        }
+
+        // If the decoder fell behind, keep the current frame and look again after its delay
+        var delay = next != null ? next.delayMillis : DEFAULT_DELAY_MILLIS;
+        this.timer.setInitialDelay(delay);
+        this.timer.start();
+    }
+
+    private void decode() {
+        try (var input = ImageIO.createImageInputStream(this.file)) {
+            var readers = ImageIO.getImageReadersByFormatName("gif");
+            if (input == null || !readers.hasNext())
+                return;
+
+            var reader = readers.next();
+            try {
+                reader.setInput(input, false, false);
+                var count = reader.getNumImages(true);
+                if (count <= 1)
+                    return;
+
+                var frameBytes = 0L;
+                for (Target target : this.targets) {
+                    frameBytes += (long) target.width * target.height * 4;
+                }
+                synchronized (this.lock) {
+                    if (this.budgetBytes <= 0 || frameBytes * count <= this.budgetBytes) {
+                        this.cached = new Frame[count];
+                    } else {
+                        this.capacity = (int) Math.max(2, this.budgetBytes / frameBytes);
+                    }
+                }
+
+                SwingUtilities.invokeLater(this::advance);
+                do {
+                    this.decodeLoop(reader, count);
+                } while (this.cached == null && !this.closed);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            System.err.println("Error on decoding animation " + this.file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void decodeLoop(ImageReader reader, int count) throws IOException, InterruptedException {
+        var screen = this.logicalScreenSize(reader);
+        var canvas = new BufferedImage(screen.width, screen.height, BufferedImage.TYPE_INT_ARGB);
+        var canvasGraphics = canvas.createGraphics();
+        try {
+            for (int i = 0; i < count && !this.closed; i++) {
+                var raw = reader.read(i);
+                var meta = frameMetadata(reader.getImageMetadata(i));
+
+                // Frames may claim to reach past the logical screen, only the part on the canvas is kept
+                var area = new Rectangle(meta.x, meta.y, raw.getWidth(), raw.getHeight())
+                        .intersection(new Rectangle(0, 0, screen.width, screen.height));
+
+                BufferedImage restore = null;
+                if ("restoreToPrevious".equals(meta.disposal) && !area.isEmpty()) {
+                    restore = copy(canvas.getSubimage(area.x, area.y, area.width, area.height));
+                }
+
+                canvasGraphics.drawImage(raw, meta.x, meta.y, null);
+                this.publish(i, new Frame(this.scale(canvas), meta.delayMillis));
+
+                switch (meta.disposal) {
+                    case "restoreToBackgroundColor" -> {
+                        canvasGraphics.setComposite(AlphaComposite.Clear);
+                        canvasGraphics.fillRect(meta.x, meta.y, raw.getWidth(), raw.getHeight());
+                        canvasGraphics.setComposite(AlphaComposite.SrcOver);
+                    }
+                    case "restoreToPrevious" -> {
+                        canvasGraphics.setComposite(AlphaComposite.Src);
+                        if (restore != null)
+                            canvasGraphics.drawImage(restore, area.x, area.y, null);
+                        canvasGraphics.setComposite(AlphaComposite.SrcOver);
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } finally {
+            canvasGraphics.dispose();
+        }
+    }
+
+    private void publish(int index, Frame frame) throws InterruptedException {
+        synchronized (this.lock) {
+            if (this.cached != null) {
+                this.cached[index] = frame;
+                return;
+            }
+
+            // Bounded look-ahead, wait for playback to consume a frame
+            while (this.ahead.size() >= this.capacity && !this.closed) {
+                this.lock.wait();
+            }
+            if (this.closed) {
+                release(frame);
+                return;
+            }
+            this.ahead.add(frame);
+        }
+    }
+
+    private BufferedImage[] scale(BufferedImage canvas) {
+        var images = new BufferedImage[this.targets.length];
+        for (int i = 0; i < images.length; i++) {
+            var target = this.targets[i];
+            var scaled = target.config != null
+                    ? target.config.createCompatibleImage(target.width, target.height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(target.width, target.height, BufferedImage.TYPE_INT_ARGB);
+            var g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(canvas, 0, 0, target.width, target.height, null);
+            g.dispose();
+            Metrics.ANIMATION_BYTES.addAndGet(Metrics.imageBytes(scaled));
+            images[i] = scaled;
+        }
+        return images;
+    }
+
+    private static void release(Frame frame) {
+        for (BufferedImage image : frame.images) {
+            Metrics.ANIMATION_BYTES.addAndGet(-Metrics.imageBytes(image));
+            image.flush();
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        var copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        var g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    private Dimension logicalScreenSize(ImageReader reader) throws IOException {
+        var width = reader.getWidth(0);
+        var height = reader.getHeight(0);
+
+        var streamMetadata = reader.getStreamMetadata();
+        if (streamMetadata != null) {
+            var descriptor = child(streamMetadata.getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+            if (descriptor != null) {
+                width = Math.max(width, intAttribute(descriptor, "logicalScreenWidth", width));
+                height = Math.max(height, intAttribute(descriptor, "logicalScreenHeight", height));
+            }
+        }
+        return new Dimension(width, height);
+    }
+
+    private record FrameMetadata(int x, int y, int delayMillis, String disposal) {
+    }
+
+    private static FrameMetadata frameMetadata(IIOMetadata metadata) {
+        var root = metadata.getAsTree("javax_imageio_gif_image_1.0");
+
+        var descriptor = child(root, "ImageDescriptor");
+        var x = descriptor != null ? intAttribute(descriptor, "imageLeftPosition", 0) : 0;
+        var y = descriptor != null ? intAttribute(descriptor, "imageTopPosition", 0) : 0;
+
+        var delay = DEFAULT_DELAY_MILLIS;
+        var disposal = "none";
+        var control = child(root, "GraphicControlExtension");
+        if (control != null) {
+            // GIF delays are stored in hundredths of a second
+            delay = intAttribute(control, "delayTime", DEFAULT_DELAY_MILLIS / 10) * 10;
+            if (delay < MIN_DELAY_MILLIS)
+                delay = DEFAULT_DELAY_MILLIS;
+            disposal = control.getAttributes().getNamedItem("disposalMethod").getNodeValue();
+        }
+        return new FrameMetadata(x, y, delay, disposal);
+    }
+
+    private static Node child(Node node, String name) {
+        for (var child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name))
+                return child;
+        }
+        return null;
+    }
+
+    private static int intAttribute(Node node, String name, int defaultValue) {
+        var attribute = node.getAttributes().getNamedItem(name);
+        return attribute != null ? Integer.parseInt(attribute.getNodeValue()) : defaultValue;
+    }
+}
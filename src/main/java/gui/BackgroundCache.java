@@ -0,0 +1,59 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Holds the background image scaled to the panel size in the format of the target device.
+ * The copy is looked up in the {@link ResourceCache} only if the source image, the size or the graphics
+ * configuration changes, so copies of recently used backgrounds are reused.
+ */
+public class BackgroundCache {
+
+    private Image source;
+
+    private GraphicsConfiguration config;
+
+    private BufferedImage scaled;
+
+    /**
+     * @param config graphics configuration of the target, null for offscreen rendering
+     */
+    public BufferedImage get(Image source, int width, int height, GraphicsConfiguration config) {
+        if (source == null || width <= 0 || height <= 0)
+            return null;
+
+        if (this.scaled == null || this.source != source || this.config != config
+                || this.scaled.getWidth() != width || this.scaled.getHeight() != height) {
+            this.scaled = ResourceCache.getDefault().getScaled(source, width, height, config);
+            this.source = source;
+            this.config = config;
+        }
+        return this.scaled;
+    }
+
+    /**
+     * Drops the reference, the copy itself stays in the {@link ResourceCache} until it is evicted.
+     */
+    public void flush() {
+        this.scaled = null;
+        this.source = null;
+        this.config = null;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Decodes background images on a worker thread. Only the most recent request is delivered,
+ * starting a new one cancels the decode that is still running.
+ */
+public class BackgroundImageLoader {
+
+    private SwingWorker<BufferedImage, Void> current;
+
+    private ImageDecoder decoder;
+
+    /**
+     * Starts decoding the file, subsampled to cover the target size within the memory budget.
+     * The callbacks are invoked on the event dispatch thread.
+     */
+    public void load(File file, int targetWidth, int targetHeight, long budgetBytes,
+                     Consumer<BufferedImage> onLoaded, Consumer<Exception> onError) {
+        this.cancel();
+
+        var decoder = new ImageDecoder(file, targetWidth, targetHeight, budgetBytes);
+        var worker = new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                return decoder.decode();
+            }
+
+            @Override
+            protected void done() {
+                // Superseded by a newer request
+                if (isCancelled() || BackgroundImageLoader.this.current != this)
+                    return;
+
+                BackgroundImageLoader.this.current = null;
+                BackgroundImageLoader.this.decoder = null;
+                try {
+                    onLoaded.accept(get());
+                } catch (ExecutionException e) {
+                    onError.accept(e.getCause() instanceof Exception cause ? cause : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        this.current = worker;
+        this.decoder = decoder;
+        worker.execute();
+    }
+
+    public void cancel() {
+        if (this.current != null) {
+            // The reader stops at the next scan line instead of decoding the rest of the superseded image
+            this.decoder.abort();
+            this.current.cancel(true);
+            this.current = null;
+            this.decoder = null;
+        }
+    }
+
+    public boolean isLoading() {
+        return this.current != null;
+    }
+}
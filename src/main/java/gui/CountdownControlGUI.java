@@ -17,9 +17,13 @@
 package gui;
 
 import data.Settings;
+import data.SettingsStore;
 import org.drjekyll.fontchooser.FontDialog;
+import timer.CountdownClock;
+import timer.Rundown;
+import timer.RundownPlayer;
+import timer.TimeFormatter;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.plaf.FontUIResource;
 import javax.swing.text.DefaultFormatterFactory;
@@ -29,17 +33,24 @@ import javax.swing.text.StyleContext;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
+import java.io.File;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.time.DateTimeException;
-import java.time.Duration;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoField;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 
 public class CountdownControlGUI extends JFrame {
@@ -61,23 +72,57 @@ public class CountdownControlGUI extends JFrame {
     private JLabel bgColorLabel;
     private JButton chooseBgColorBtn;
     private JComboBox bgModeSelector;
+    private JComboBox timeLayoutSelector;
+    private JCheckBox autoFitCheckBox;
     private JFormattedTextField verticalPadField;
     private JFormattedTextField horizontalPadField;
     private JComboBox alignmentSelector;
     private JLabel timerLabel;
     private JButton chooseFontBtn;
+    private JList<String> profileList;
+    private JButton saveProfileBtn;
+    private JButton applyProfileBtn;
+    private JButton deleteProfileBtn;
+    private JList<String> segmentList;
+    private JButton loadRundownBtn;
+    private JButton startRundownBtn;
+    private JButton stopRundownBtn;
 
     private final TimerGUI timerGUI;
 
-    private final Preferences preferences;
+    // All timer windows, the first one is the primary output that also drives the clock
+    private final List<TimerGUI> outputs;
+
+    private final SettingsStore store;
 
     private Settings settings;
 
-    public CountdownControlGUI(TimerGUI gui, Preferences preferences) {
+    private final BackgroundImageLoader imageLoader = new BackgroundImageLoader();
+
+    private AnimatedBackground animation;
+
+    private boolean appearanceUpdateScheduled = false;
+
+    private final DefaultListModel<String> profileNames = new DefaultListModel<>();
+
+    private static final DateTimeFormatter SEGMENT_TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final DefaultListModel<String> segmentNames = new DefaultListModel<>();
+
+    private Rundown rundown;
+
+    private RundownPlayer rundownPlayer;
+
+    public CountdownControlGUI(TimerGUI gui, SettingsStore store) {
+        this(List.of(gui), store);
+    }
+
+    public CountdownControlGUI(List<TimerGUI> outputs, SettingsStore store) {
         super();
 
-        this.timerGUI = gui;
-        this.preferences = preferences;
+        this.outputs = outputs;
+        this.timerGUI = outputs.get(0);
+        this.store = store;
         this.timerGUI.setTimerUpdateCallback((text) -> {
             this.timerLabel.setText(text);
         });
@@ -120,11 +165,13 @@ public class CountdownControlGUI extends JFrame {
 
         NumberFormatter numberFormatter = new NumberFormatter(integerFormat);
         numberFormatter.setAllowsInvalid(false);
+        // Outputs only repaint the moved text, so margins can follow the typing
+        numberFormatter.setCommitsOnValidEdit(true);
         numberFormatter.setMinimum(0);
         numberFormatter.setMaximum(10000);
 
         this.horizontalPadField.setFormatterFactory(new DefaultFormatterFactory(numberFormatter));
-        this.horizontalPadField.setFormatterFactory(new DefaultFormatterFactory(numberFormatter));
+        this.verticalPadField.setFormatterFactory(new DefaultFormatterFactory(numberFormatter));
 
         // Populate content
         for (Settings.BackgroundMode mode : Settings.BackgroundMode.values()) {
@@ -136,13 +183,32 @@ public class CountdownControlGUI extends JFrame {
             this.alignmentSelector.addItem(alignment);
         }
 
+        for (TimeFormatter.Layout layout : TimeFormatter.Layout.values()) {
+            this.timeLayoutSelector.addItem(layout);
+        }
+
         // Add ActionListeners
         this.startBtn.addActionListener(this::timerEvent);
         this.stopBtn.addActionListener(this::timerEvent);
         this.restBtn.addActionListener(this::timerEvent);
 
+        // The clock can also be controlled remotely, so the buttons follow its state instead of the clicks
+        this.timerGUI.getClock().addListener(new CountdownClock.Listener() {
+            @Override
+            public void tick(long remainingNanos, long latenessNanos) {
+            }
+
+            @Override
+            public void stateChanged(CountdownClock clock) {
+                CountdownControlGUI.this.updateTimerButtons(clock);
+            }
+        });
+        this.updateTimerButtons(this.timerGUI.getClock());
+
         this.bgModeSelector.addItemListener(this::selectionChanged);
         this.alignmentSelector.addItemListener(this::selectionChanged);
+        this.timeLayoutSelector.addItemListener(this::selectionChanged);
+        this.autoFitCheckBox.addItemListener(this::selectionChanged);
 
         this.horizontalPadField.addPropertyChangeListener("value", this::insetsChanged);
         this.verticalPadField.addPropertyChangeListener("value", this::insetsChanged);
@@ -152,9 +218,52 @@ public class CountdownControlGUI extends JFrame {
         this.chooseBgColorBtn.addActionListener(this::chooseEvent);
         this.chooseImageBtn.addActionListener(this::chooseEvent);
 
+        this.profileList.setModel(this.profileNames);
+        // Selecting a profile already prepares its resources, applying it afterwards takes a single frame
+        this.profileList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && this.profileList.getSelectedValue() != null)
+                this.warmProfile(this.profileList.getSelectedValue());
+        });
+        this.profileList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && profileList.getSelectedValue() != null)
+                    applyProfile(profileList.getSelectedValue());
+            }
+        });
+        this.saveProfileBtn.addActionListener(this::profileEvent);
+        this.applyProfileBtn.addActionListener(this::profileEvent);
+        this.deleteProfileBtn.addActionListener(this::profileEvent);
+
+        // The selection follows the current segment
+        this.segmentList.setModel(this.segmentNames);
+        this.loadRundownBtn.addActionListener(this::rundownEvent);
+        this.startRundownBtn.addActionListener(this::rundownEvent);
+        this.stopRundownBtn.addActionListener(this::rundownEvent);
+
         // update UI
+        this.updateControls();
+        this.updateProfileList(null);
+
+        if (settings.imagePath != null) {
+            this.loadBackgroundImage(new File(settings.imagePath));
+        }
+
+        this.addWindowListener(new WindowAdapter() {
+
+            @Override
+            public void windowClosing(WindowEvent e) {
+                store.changed(settings);
+                store.flush();
+            }
+        });
+    }
+
+    private void updateControls() {
         this.bgModeSelector.setSelectedItem(settings.mode);
         this.alignmentSelector.setSelectedItem(settings.alignment);
+        this.timeLayoutSelector.setSelectedItem(settings.timeLayout);
+        this.autoFitCheckBox.setSelected(settings.autoFit);
 
         this.horizontalPadField.setValue(settings.marginX);
         this.verticalPadField.setValue(settings.marginY);
@@ -164,18 +273,246 @@ public class CountdownControlGUI extends JFrame {
 
         this.textColorLabel.setBackground(settings.textColor);
         this.bgColorLabel.setBackground(settings.backgroundColor);
+    }
 
-        this.addWindowListener(new WindowAdapter() {
+    private void rundownEvent(ActionEvent e) {
+        switch (e.getActionCommand()) {
+            case "loadRundown" -> {
+                var fileChooser = new JFileChooser();
+                fileChooser.setMultiSelectionEnabled(false);
+                if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+                    return;
+
+                var file = fileChooser.getSelectedFile();
+                try {
+                    this.stopRundown();
+                    this.rundown = Rundown.load(file.toPath());
+                    this.updateSegmentList();
+                    // The look of the first segment is ready by the time the show starts
+                    this.warmSegment(0);
+                } catch (IOException | IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, "Error on loading rundown " + file.getAbsolutePath()
+                            + ": " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+            case "startRundown" -> {
+                if (this.rundown == null)
+                    return;
+
+                this.stopRundown();
+                this.rundownPlayer = new RundownPlayer(this.timerGUI.getClock(), this.rundown,
+                        new RundownPlayer.Listener() {
+                            @Override
+                            public void segmentStarted(int index) {
+                                CountdownControlGUI.this.segmentStarted(index);
+                            }
+
+                            @Override
+                            public void finished() {
+                                CountdownControlGUI.this.segmentList.clearSelection();
+                            }
+
+                            @Override
+                            public void replaced() {
+                                CountdownControlGUI.this.stopRundown();
+                            }
+                        });
+                this.rundownPlayer.start();
+                this.updateSegmentList();
+            }
+            case "stopRundown" -> this.stopRundown();
+        }
+    }
+
+    private void stopRundown() {
+        if (this.rundownPlayer != null) {
+            this.rundownPlayer.stop();
+            this.rundownPlayer = null;
+            this.segmentList.clearSelection();
+        }
+    }
+
+    /**
+     * Switches to the look of the segment, which was prepared while the previous one was running, and prepares
+     * the look of the following one.
+     */
+    private void segmentStarted(int index) {
+        var segment = this.rundown.get(index);
+        if (segment.profile() != null)
+            this.applyProfile(segment.profile());
+
+        this.warmSegment(index + 1);
+        this.segmentList.setSelectedIndex(index);
+        this.segmentList.ensureIndexIsVisible(index);
+    }
+
+    private void warmSegment(int index) {
+        if (index < this.rundown.size() && this.rundown.get(index).profile() != null)
+            this.warmProfile(this.rundown.get(index).profile());
+    }
+
+    /**
+     * Lists the segments, with their planned start times while the rundown is playing.
+     */
+    private void updateSegmentList() {
+        this.segmentNames.clear();
+        var schedule = this.rundownPlayer != null ? this.rundownPlayer.getSchedule() : null;
+        var nowNanos = System.nanoTime();
+        var now = LocalDateTime.now();
+        for (int i = 0; i < this.rundown.size(); i++) {
+            var segment = this.rundown.get(i);
+            var text = new StringBuilder();
+            if (schedule != null) {
+                var start = i > 0 ? schedule[i - 1] : nowNanos;
+                text.append(now.plusNanos(start - nowNanos).format(SEGMENT_TIME_FORMATTER)).append("  ");
+            }
+            text.append(segment.name());
+            if (segment.isClockTime()) {
+                text.append("  until ").append(segment.clockTime());
+            } else {
+                var duration = segment.duration();
+                text.append(String.format("  %02d:%02d:%02d", duration.toHours(), duration.toMinutesPart(),
+                        duration.toSecondsPart()));
+            }
+            if (segment.profile() != null)
+                text.append("  [").append(segment.profile()).append(']');
+            this.segmentNames.addElement(text.toString());
+        }
+        if (this.rundownPlayer != null && this.rundownPlayer.getIndex() >= 0)
+            this.segmentList.setSelectedIndex(this.rundownPlayer.getIndex());
+    }
+
+    private void updateProfileList(String selected) {
+        this.profileNames.clear();
+        this.settings.profiles.keySet().forEach(this.profileNames::addElement);
+        if (selected != null)
+            this.profileList.setSelectedValue(selected, true);
+    }
+
+    private void profileEvent(ActionEvent e) {
+        var selected = this.profileList.getSelectedValue();
+        switch (e.getActionCommand()) {
+            case "saveProfile" -> {
+                var name = JOptionPane.showInputDialog(this, "Profile name", selected != null ? selected : "");
+                if (name == null || name.isBlank())
+                    return;
+
+                // Profile names are node names in the settings
+                name = name.trim().replace('/', '-');
+                if (name.length() > Preferences.MAX_NAME_LENGTH)
+                    name = name.substring(0, Preferences.MAX_NAME_LENGTH);
+
+                this.settings.profiles.put(name, this.settings.copyAppearance());
+                this.updateProfileList(name);
+                this.store.changed(this.settings);
+            }
+            case "applyProfile" -> {
+                if (selected != null)
+                    this.applyProfile(selected);
+            }
+            case "deleteProfile" -> {
+                if (selected != null) {
+                    this.settings.profiles.remove(selected);
+                    this.updateProfileList(null);
+                    this.store.changed(this.settings);
+                }
+            }
+        }
+    }
+
+    private void applyProfile(String name) {
+        var profile = this.settings.profiles.get(name);
+        if (profile == null)
+            return;
+
+        var previousPath = this.settings.imagePath;
+        this.settings.applyAppearance(profile);
+        this.updateControls();
+
+        if (!Objects.equals(previousPath, this.settings.imagePath)) {
+            this.settings.backgroundImage = null;
+            if (this.settings.imagePath != null) {
+                // Immediate if the profile was used or selected before
+                this.loadBackgroundImage(new File(this.settings.imagePath));
+            } else {
+                this.imageLoader.cancel();
+                this.updateAnimation(null, 0);
+            }
+        }
+        this.updateAppearance();
+    }
 
+    /**
+     * Decodes the background of a profile and builds its glyph atlas and scaled copies for every output
+     * in the background, unless the resource cache still has them.
+     */
+    private void warmProfile(String name) {
+        var profile = this.settings.profiles.get(name);
+        if (profile == null)
+            return;
+
+        var width = this.settings.bounds.width;
+        var height = this.settings.bounds.height;
+        var budget = this.settings.imageBudgetMB * 1024L * 1024L;
+
+        // The worker must not touch the windows, so their sizes and devices are taken here
+        var sizes = new Dimension[this.outputs.size()];
+        var configs = new GraphicsConfiguration[this.outputs.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            var content = this.outputs.get(i).getContentPane();
+            sizes[i] = content.getSize();
+            configs[i] = content.getGraphicsConfiguration();
+        }
+
+        new SwingWorker<Void, Void>() {
             @Override
-            public void windowClosing(WindowEvent e) {
-                settings.saveTo(preferences);
+            protected Void doInBackground() throws Exception {
+                BufferedImage image = null;
+                if (profile.mode == Settings.BackgroundMode.IMAGE && profile.imagePath != null) {
+                    var cache = ResourceCache.getDefault();
+                    image = cache.getDecoded(profile.imagePath, width, height, budget);
+                    if (image == null) {
+                        var decoded = new ImageDecoder(new File(profile.imagePath), width, height, budget).decode();
+                        image = cache.putDecoded(profile.imagePath, width, height, budget, decoded);
+                    }
+                }
+                for (int i = 0; i < sizes.length; i++) {
+                    TimerRenderer.warm(profile, image, sizes[i].width, sizes[i].height, configs[i]);
+                }
+                return null;
             }
-        });
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    System.err.println("Error on preparing profile " + name + ": " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
     }
 
+    /**
+     * Schedules applying the settings to the outputs. All changes made while handling the current events,
+     * e.g. every control updated by a profile, reach the outputs as a single update.
+     */
     private void updateAppearance() {
-        this.timerGUI.updateAppearance(this.settings);
+        if (this.appearanceUpdateScheduled)
+            return;
+
+        this.appearanceUpdateScheduled = true;
+        SwingUtilities.invokeLater(this::applyAppearance);
+    }
+
+    private void applyAppearance() {
+        this.appearanceUpdateScheduled = false;
+        for (TimerGUI output : this.outputs) {
+            output.updateAppearance(this.settings);
+        }
+        this.store.changed(this.settings);
     }
 
     private void selectionChanged(ItemEvent itemEvent) {
@@ -185,6 +522,12 @@ public class CountdownControlGUI extends JFrame {
         } else if (itemEvent.getSource() == this.bgModeSelector) {
             settings.mode = (Settings.BackgroundMode) itemEvent.getItem();
             this.updateAppearance();
+        } else if (itemEvent.getSource() == this.timeLayoutSelector) {
+            settings.timeLayout = (TimeFormatter.Layout) itemEvent.getItem();
+            this.updateAppearance();
+        } else if (itemEvent.getSource() == this.autoFitCheckBox) {
+            settings.autoFit = this.autoFitCheckBox.isSelected();
+            this.updateAppearance();
         }
     }
 
@@ -224,15 +567,7 @@ public class CountdownControlGUI extends JFrame {
                 fileChooser.setMultiSelectionEnabled(false);
                 fileChooser.setFileFilter(new ImageFilter());
                 if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-                    try {
-                        settings.backgroundImage = ImageIO.read(fileChooser.getSelectedFile());
-                        settings.imagePath = fileChooser.getSelectedFile().getAbsolutePath();
-                        this.imageFilePath.setText(settings.imagePath);
-                        this.updateAppearance();
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(this, "Error on loading file " +
-                                fileChooser.getSelectedFile().getAbsolutePath(), "Error", JOptionPane.ERROR_MESSAGE);
-                    }
+                    this.loadBackgroundImage(fileChooser.getSelectedFile());
                 }
 
             }
@@ -252,48 +587,85 @@ public class CountdownControlGUI extends JFrame {
         }
     }
 
-    private void timerEvent(ActionEvent e) {
-        switch (e.getActionCommand()) {
-            case "startTimer" -> {
-                this.timerGUI.start();
+    private void loadBackgroundImage(File file) {
+        // Decoding large images takes a while, the timer keeps the placeholder until it is done
+        var budget = settings.imageBudgetMB * 1024L * 1024L;
+        var width = settings.bounds.width;
+        var height = settings.bounds.height;
+        var path = file.getAbsolutePath();
 
-                this.startBtn.setEnabled(false);
-                this.stopBtn.setEnabled(true);
-            }
-            case "stopTimer" -> {
-                this.timerGUI.stop();
+        // Images of recently used looks are still decoded
+        var cache = ResourceCache.getDefault();
+        var cached = cache.getDecoded(path, width, height, budget);
+        if (cached != null) {
+            this.imageLoader.cancel();
+            this.setBackgroundImage(file, cached, budget);
+            return;
+        }
 
-                this.startBtn.setEnabled(true);
-                this.stopBtn.setEnabled(false);
-            }
-            case "resetTimer" -> {
-                this.timerGUI.reset();
+        this.imageLoader.load(file, width, height, budget,
+                image -> this.setBackgroundImage(file, cache.putDecoded(path, width, height, budget, image), budget),
+                ex -> JOptionPane.showMessageDialog(this, "Error on loading file " +
+                        file.getAbsolutePath(), "Error", JOptionPane.ERROR_MESSAGE));
+    }
+
+    private void setBackgroundImage(File file, BufferedImage image, long budget) {
+        // The previous image stays in the resource cache for a quick switch back
+        settings.backgroundImage = image;
+        settings.imagePath = file.getAbsolutePath();
+        this.imageFilePath.setText(settings.imagePath);
+        this.updateAnimation(file, budget);
+        this.updateAppearance();
+    }
+
+    private void updateAnimation(File file, long budget) {
+        if (this.animation != null) {
+            this.animation.close();
+            this.animation = null;
+        }
+
+        // The first frame is shown as a still image until the animation has decoded its frames
+        if (file != null && Utils.gif.equals(Utils.getExtension(file))) {
+            // Frames are prepared for every output, mirrored displays may differ in size and device
+            var targets = new ArrayList<AnimatedBackground.Target>();
+            for (TimerGUI output : this.outputs) {
+                var width = output.getWidth() > 0 ? output.getWidth() : settings.bounds.width;
+                var height = output.getHeight() > 0 ? output.getHeight() : settings.bounds.height;
+                targets.add(new AnimatedBackground.Target(width, height, output.getGraphicsConfiguration()));
             }
-            case "setTimer" -> {
-                var text = this.presetTimeField.getText();
-                var splits = text.split(":");
+            this.animation = new AnimatedBackground(file, targets, budget);
+            this.animation.start();
+        }
+        for (TimerGUI output : this.outputs) {
+            output.setBackgroundAnimation(this.animation);
+        }
+    }
 
-                Duration duration = Duration.ZERO;
-                duration = duration.plusHours(Integer.parseInt(splits[0]));
-                duration = duration.plusMinutes(Integer.parseInt(splits[1]));
-                duration = duration.plusSeconds(Integer.parseInt(splits[2]));
+    private void updateTimerButtons(CountdownClock clock) {
+        this.startBtn.setEnabled(!clock.isRunning());
+        this.stopBtn.setEnabled(clock.isRunning());
+    }
 
-                this.timerGUI.setCountdown(duration);
+    private void timerEvent(ActionEvent e) {
+        switch (e.getActionCommand()) {
+            case "startTimer" -> this.timerGUI.start();
+            case "stopTimer" -> this.timerGUI.stop();
+            case "resetTimer" -> this.timerGUI.reset();
+            case "setTimer" -> {
+                // A manually set countdown replaces the rundown
+                try {
+                    var duration = TimeFormatter.parseDuration(this.presetTimeField.getText());
+                    this.stopRundown();
+                    this.timerGUI.setCountdown(duration);
+                } catch (NumberFormatException ex) {
+                    JOptionPane.showMessageDialog(this, "Ungültiger Wert", "Fehler", JOptionPane.ERROR_MESSAGE);
+                }
             }
             case "startCountdown" -> {
                 try {
-                    var daySeconds = Utils.CLOCK_TIME_FORMATTER.parse(this.clockTimeField.getText()).get(ChronoField.SECOND_OF_DAY);
-
-                    var localTime = LocalDate.now().atStartOfDay().plusSeconds(daySeconds);
-                    if (localTime.isBefore(LocalDateTime.now())) {
-                        localTime = localTime.plusDays(1);
-                    }
-
-                    this.timerGUI.setCountdownToTime(localTime);
+                    this.stopRundown();
+                    this.timerGUI.setCountdownToTime(Utils.nextClockTime(this.clockTimeField.getText()));
                     this.timerGUI.start();
-
-                    this.startBtn.setEnabled(false);
-                    this.stopBtn.setEnabled(true);
                 } catch (DateTimeException ex) {
                     JOptionPane.showMessageDialog(this, "Ungültiger Wert", "Fehler", JOptionPane.ERROR_MESSAGE);
                 }
@@ -525,6 +897,39 @@ public class CountdownControlGUI extends JFrame {
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.insets = new Insets(5, 5, 5, 5);
         panel2.add(bgModeSelector, gbc);
+        final JLabel label13 = new JLabel();
+        label13.setText("Time Format");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 9;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel2.add(label13, gbc);
+        timeLayoutSelector = new JComboBox();
+        gbc = new GridBagConstraints();
+        gbc.gridx = 1;
+        gbc.gridy = 9;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel2.add(timeLayoutSelector, gbc);
+        final JLabel label14 = new JLabel();
+        label14.setText("Text Size");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 10;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel2.add(label14, gbc);
+        autoFitCheckBox = new JCheckBox();
+        autoFitCheckBox.setText("Fit to window");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 1;
+        gbc.gridy = 10;
+        gbc.gridwidth = 3;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel2.add(autoFitCheckBox, gbc);
         final JLabel label8 = new JLabel();
         label8.setText("Text Alignment");
         gbc = new GridBagConstraints();
@@ -601,7 +1006,108 @@ public class CountdownControlGUI extends JFrame {
         panel2.add(chooseFontBtn, gbc);
         final JPanel panel3 = new JPanel();
         panel3.setLayout(new GridBagLayout());
-        contentPane.add(panel3, BorderLayout.SOUTH);
+        mainTabbedPane.addTab("Profiles", panel3);
+        final JScrollPane scrollPane1 = new JScrollPane();
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 4;
+        gbc.weightx = 1.0;
+        gbc.weighty = 1.0;
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel3.add(scrollPane1, gbc);
+        profileList = new JList();
+        profileList.setSelectionMode(0);
+        scrollPane1.setViewportView(profileList);
+        saveProfileBtn = new JButton();
+        saveProfileBtn.setActionCommand("saveProfile");
+        saveProfileBtn.setText("Save Current As...");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel3.add(saveProfileBtn, gbc);
+        applyProfileBtn = new JButton();
+        applyProfileBtn.setActionCommand("applyProfile");
+        applyProfileBtn.setText("Apply");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 1;
+        gbc.gridy = 1;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel3.add(applyProfileBtn, gbc);
+        deleteProfileBtn = new JButton();
+        deleteProfileBtn.setActionCommand("deleteProfile");
+        deleteProfileBtn.setText("Delete");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 2;
+        gbc.gridy = 1;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel3.add(deleteProfileBtn, gbc);
+        final JPanel spacer2 = new JPanel();
+        gbc = new GridBagConstraints();
+        gbc.gridx = 3;
+        gbc.gridy = 1;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        panel3.add(spacer2, gbc);
+        final JPanel panel4 = new JPanel();
+        panel4.setLayout(new GridBagLayout());
+        mainTabbedPane.addTab("Rundown", panel4);
+        final JScrollPane scrollPane2 = new JScrollPane();
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 4;
+        gbc.weightx = 1.0;
+        gbc.weighty = 1.0;
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel4.add(scrollPane2, gbc);
+        segmentList = new JList();
+        segmentList.setEnabled(false);
+        segmentList.setSelectionMode(0);
+        scrollPane2.setViewportView(segmentList);
+        loadRundownBtn = new JButton();
+        loadRundownBtn.setActionCommand("loadRundown");
+        loadRundownBtn.setText("Load...");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel4.add(loadRundownBtn, gbc);
+        startRundownBtn = new JButton();
+        startRundownBtn.setActionCommand("startRundown");
+        startRundownBtn.setText("Start Rundown");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 1;
+        gbc.gridy = 1;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel4.add(startRundownBtn, gbc);
+        stopRundownBtn = new JButton();
+        stopRundownBtn.setActionCommand("stopRundown");
+        stopRundownBtn.setText("Stop Rundown");
+        gbc = new GridBagConstraints();
+        gbc.gridx = 2;
+        gbc.gridy = 1;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        panel4.add(stopRundownBtn, gbc);
+        final JPanel spacer3 = new JPanel();
+        gbc = new GridBagConstraints();
+        gbc.gridx = 3;
+        gbc.gridy = 1;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        panel4.add(spacer3, gbc);
+        final JPanel panel5 = new JPanel();
+        panel5.setLayout(new GridBagLayout());
+        contentPane.add(panel5, BorderLayout.SOUTH);
         timerLabel = new JLabel();
         Font timerLabelFont = this.$$$getFont$$$(null, -1, 18, timerLabel.getFont());
         if (timerLabelFont != null) timerLabel.setFont(timerLabelFont);
@@ -613,7 +1119,7 @@ public class CountdownControlGUI extends JFrame {
         gbc.weighty = 1.0;
         gbc.anchor = GridBagConstraints.WEST;
         gbc.insets = new Insets(5, 5, 5, 5);
-        panel3.add(timerLabel, gbc);
+        panel5.add(timerLabel, gbc);
         stopBtn = new JButton();
         stopBtn.setActionCommand("stopTimer");
         stopBtn.setText("Stop");
@@ -622,7 +1128,7 @@ public class CountdownControlGUI extends JFrame {
         gbc.gridy = 0;
         gbc.weighty = 1.0;
         gbc.insets = new Insets(5, 5, 5, 5);
-        panel3.add(stopBtn, gbc);
+        panel5.add(stopBtn, gbc);
         restBtn = new JButton();
         restBtn.setActionCommand("resetTimer");
         restBtn.setText("Reset");
@@ -631,7 +1137,7 @@ public class CountdownControlGUI extends JFrame {
         gbc.gridy = 0;
         gbc.weighty = 1.0;
         gbc.insets = new Insets(5, 5, 5, 5);
-        panel3.add(restBtn, gbc);
+        panel5.add(restBtn, gbc);
         startBtn = new JButton();
         startBtn.setActionCommand("startTimer");
         startBtn.setText("Start");
@@ -640,7 +1146,7 @@ public class CountdownControlGUI extends JFrame {
         gbc.gridy = 0;
         gbc.weighty = 1.0;
         gbc.insets = new Insets(5, 5, 5, 5);
-        panel3.add(startBtn, gbc);
+        panel5.add(startBtn, gbc);
     }
 
     /**
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+
+/**
+ * Finds the largest font size at which a text fits into a box.
+ * <p>
+ * The glyph advances are measured once per font at a reference size and scaled linearly, so a fit is a few
+ * multiplications. Every digit is assumed to be as wide as the widest one, which makes the result independent
+ * of the displayed value: it only changes with the number of characters or the size of the box.
+ */
+public class FontFitter {
+
+    private static final float REFERENCE_SIZE = 100.0f;
+
+    private static final float MIN_SIZE = 1.0f;
+
+    private final FontRenderContext frc = new FontRenderContext(null, true, true);
+
+    private Font font;
+
+    private float digitAdvance;
+
+    private final float[] advance = new float[GlyphAtlas.CHARACTERS.length()];
+
+    private float lineHeight;
+
+    private int fitLength = -1;
+
+    private int fitWidth;
+
+    private int fitHeight;
+
+    private float fitSize;
+
+    /**
+     * @param font base font, only its family and style are used
+     * @return the font size, at least 1 even if the box is empty
+     */
+    public float fit(Font font, char[] text, int length, int width, int height) {
+        if (!font.equals(this.font)) {
+            this.measure(font);
+        } else if (length == this.fitLength && width == this.fitWidth && height == this.fitHeight) {
+            return this.fitSize;
+        }
+
+        var textWidth = 0.0f;
+        for (int i = 0; i < length; i++) {
+            textWidth += this.advance(text[i]);
+        }
+
+        var size = REFERENCE_SIZE * Math.min(width / Math.max(textWidth, 1.0f), height / this.lineHeight);
+        size = Math.max(MIN_SIZE, (float) Math.floor(size));
+
+        // Displayed metrics are rounded to whole pixels, shrink until the rounded text fits as well
+        while (size > MIN_SIZE && !this.fits(size, text, length, width, height)) {
+            size--;
+        }
+
+        this.fitLength = length;
+        this.fitWidth = width;
+        this.fitHeight = height;
+        this.fitSize = size;
+        return size;
+    }
+
+    private void measure(Font font) {
+        this.font = font;
+        this.fitLength = -1;
+
+        var reference = font.deriveFont(REFERENCE_SIZE);
+        var glyphs = reference.createGlyphVector(this.frc, GlyphAtlas.CHARACTERS);
+        this.digitAdvance = 0.0f;
+        for (int i = 0; i < this.advance.length; i++) {
+            this.advance[i] = glyphs.getGlyphMetrics(i).getAdvance();
+            if (Character.isDigit(GlyphAtlas.CHARACTERS.charAt(i)))
+                this.digitAdvance = Math.max(this.digitAdvance, this.advance[i]);
+        }
+
+        var line = reference.getLineMetrics(GlyphAtlas.CHARACTERS, this.frc);
+        this.lineHeight = Math.max(1.0f, line.getAscent() + line.getDescent());
+    }
+
+    private float advance(char c) {
+        if (Character.isDigit(c))
+            return this.digitAdvance;
+
+        var index = GlyphAtlas.CHARACTERS.indexOf(c);
+        return index >= 0 ? this.advance[index] : this.digitAdvance;
+    }
+
+    private boolean fits(float size, char[] text, int length, int width, int height) {
+        var probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        var probeGraphics = probe.createGraphics();
+        var metrics = probeGraphics.getFontMetrics(this.font.deriveFont(size));
+        probeGraphics.dispose();
+
+        var digitWidth = 0;
+        for (char c = '0'; c <= '9'; c++) {
+            digitWidth = Math.max(digitWidth, metrics.charWidth(c));
+        }
+
+        var textWidth = 0;
+        for (int i = 0; i < length; i++) {
+            textWidth += Character.isDigit(text[i]) ? digitWidth : metrics.charWidth(text[i]);
+        }
+        return textWidth <= width && metrics.getAscent() + metrics.getDescent() <= height;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import data.Settings;
+import timer.CountdownClock;
+import timer.TimeFormatter;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Renders a countdown with the look of the settings into an image sequence, faster than real time.
+ * <p>
+ * The displayed text of every frame is known up front, so consecutive frames showing the same text are rendered
+ * and encoded only once and written repeatedly. The distinct frames are rendered and encoded in parallel, every
+ * worker thread keeps its own renderer and buffer.
+ */
+public class FrameExporter {
+
+    public enum Format {
+        // One numbered PNG file per frame, with alpha for the transparent background mode
+        PNG,
+        // All frames in one file, 4 bytes per pixel in BGRA order, as read by e.g. ffmpeg -f rawvideo -pix_fmt bgra
+        RAW
+    }
+
+    private record Run(int firstFrame, int frames, String text) {
+    }
+
+    private final Settings settings;
+
+    private final int width;
+
+    private final int height;
+
+    private final int frameRate;
+
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * @param settings look of the timer, it must not be changed during an export
+     */
+    public FrameExporter(Settings settings, int width, int height, int frameRate) {
+        if (width <= 0 || height <= 0 || frameRate <= 0)
+            throw new IllegalArgumentException("Size and frame rate must be positive");
+
+        this.settings = settings;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    /**
+     * Number of frames of an export, the countdown plus a last frame showing zero.
+     */
+    public int getFrameCount(Duration duration) {
+        return (int) (duration.toNanos() * this.frameRate / CountdownClock.NANOS_PER_SECOND) + 1;
+    }
+
+    /**
+     * Renders the countdown from the duration down to zero.
+     *
+     * @param target   directory for {@link Format#PNG}, file for {@link Format#RAW}
+     * @param progress called with the number of finished frames, from any thread
+     * @return number of frames written
+     */
+    public int export(Duration duration, Format format, Path target, ForkJoinPool pool, IntConsumer progress)
+            throws IOException {
+        var runs = this.runs(duration);
+        try {
+            if (format == Format.PNG) {
+                this.exportPng(runs, target, pool, progress);
+            } else {
+                this.exportRaw(runs, target, pool, progress);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            throw new IOException("Export failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        }
+        return this.getFrameCount(duration);
+    }
+
+    /**
+     * Splits the frames into runs showing the same text.
+     */
+    private List<Run> runs(Duration duration) {
+        var formatter = new TimeFormatter();
+        var total = duration.toNanos();
+        var frames = this.getFrameCount(duration);
+
+        var runs = new ArrayList<Run>();
+        String text = null;
+        var first = 0;
+        for (int i = 0; i < frames; i++) {
+            var remaining = Math.max(0, total - i * CountdownClock.NANOS_PER_SECOND / this.frameRate);
+            formatter.format(remaining, this.settings.timeLayout);
+            var next = formatter.toString();
+            if (!next.equals(text)) {
+                if (text != null)
+                    runs.add(new Run(first, i - first, text));
+                text = next;
+                first = i;
+            }
+        }
+        runs.add(new Run(first, frames - first, text));
+        return runs;
+    }
+
+    private void exportPng(List<Run> runs, Path directory, ForkJoinPool pool, IntConsumer progress)
+            throws IOException, ExecutionException, InterruptedException {
+        Files.createDirectories(directory);
+
+        // Files can be written in any order, so every run is a task of its own
+        var tasks = new ArrayList<Callable<Void>>(runs.size());
+        var done = new AtomicInteger();
+        for (Run run : runs) {
+            tasks.add(() -> {
+                var png = this.workers.get().png(run.text);
+                for (int i = 0; i < run.frames; i++) {
+                    Files.write(directory.resolve(String.format("frame_%06d.png", run.firstFrame + i)), png);
+                }
+                progress.accept(done.addAndGet(run.frames));
+                return null;
+            });
+        }
+        for (Future<Void> result : pool.invokeAll(tasks)) {
+            result.get();
+        }
+    }
+
+    private void exportRaw(List<Run> runs, Path file, ForkJoinPool pool, IntConsumer progress)
+            throws IOException, ExecutionException, InterruptedException {
+        // Frames have to be written in order, so a few batches of raw frames are in memory at a time
+        var batchSize = pool.getParallelism() * 2;
+        var done = 0;
+        try (var out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20)) {
+            for (int start = 0; start < runs.size(); start += batchSize) {
+                var batch = runs.subList(start, Math.min(start + batchSize, runs.size()));
+                var tasks = new ArrayList<Callable<byte[]>>(batch.size());
+                for (Run run : batch) {
+                    tasks.add(() -> this.workers.get().raw(run.text));
+                }
+
+                var results = pool.invokeAll(tasks);
+                for (int i = 0; i < batch.size(); i++) {
+                    var frame = results.get(i).get();
+                    for (int j = 0; j < batch.get(i).frames; j++) {
+                        out.write(frame);
+                    }
+                    done += batch.get(i).frames;
+                    progress.accept(done);
+                }
+            }
+        }
+    }
+
+    /**
+     * Render state of one pool thread.
+     */
+    private final class Worker {
+
+        private final TimerRenderer renderer = new TimerRenderer(FrameExporter.this.settings);
+
+        private final BufferedImage buffer = new BufferedImage(FrameExporter.this.width, FrameExporter.this.height,
+                BufferedImage.TYPE_INT_ARGB);
+
+        private final int[] pixels = ((DataBufferInt) this.buffer.getRaster().getDataBuffer()).getData();
+
+        private Worker() {
+            this.renderer.updateSettings(FrameExporter.this.settings, this.buffer.getWidth(), this.buffer.getHeight(), null);
+        }
+
+        private void render(String text) {
+            var chars = text.toCharArray();
+            this.renderer.setText(chars, chars.length);
+
+            var g = this.buffer.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Clear);
+                g.fillRect(0, 0, this.buffer.getWidth(), this.buffer.getHeight());
+                g.setComposite(AlphaComposite.SrcOver);
+                this.renderer.paint(g, this.buffer.getWidth(), this.buffer.getHeight(), null);
+            } finally {
+                g.dispose();
+            }
+        }
+
+        private byte[] png(String text) {
+            this.render(text);
+            try (var out = new ByteArrayOutputStream(64 * 1024)) {
+                ImageIO.write(this.buffer, "png", out);
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private byte[] raw(String text) {
+            this.render(text);
+            // Little endian ARGB ints are BGRA bytes
+            var bytes = ByteBuffer.allocate(this.pixels.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asIntBuffer().put(this.pixels);
+            return bytes.array();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import diag.Metrics;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+
+/**
+ * Pre-rendered sprites of all characters the timer displays for one font, color and scale.
+ * Drawing text only copies image regions, no text layout or anti-aliasing happens per frame.
+ */
+public class GlyphAtlas {
+
+    public static final String CHARACTERS = "0123456789:-+.";
+
+    private final Font font;
+
+    private final Color color;
+
+    private final double scale;
+
+    private final BufferedImage image;
+
+    private final FontMetrics metrics;
+
+    // Per glyph: position of the sprite in the atlas, its width and the distance from sprite edge to pen position
+    private final int[] spriteX = new int[CHARACTERS.length()];
+
+    private final int[] spriteWidth = new int[CHARACTERS.length()];
+
+    private final int[] originX = new int[CHARACTERS.length()];
+
+    private final int[] advance = new int[CHARACTERS.length()];
+
+    // Digits share the advance of the widest one and are centered in it, so a changing digit never moves the text
+    private final int[] centerX = new int[CHARACTERS.length()];
+
+    // Distance from the top of the line to the top of the sprites, may be negative for tall glyphs
+    private final int spriteTop;
+
+    private final int spriteHeight;
+
+    /**
+     * @param font   the font the glyphs are rendered with, already derived to the displayed size
+     * @param scale  device scale of the target, sprites are rendered with this many pixels per unit
+     * @param config graphics configuration of the target, null for offscreen rendering
+     */
+    public GlyphAtlas(Font font, Color color, double scale, GraphicsConfiguration config) {
+        this.font = font;
+        this.color = color;
+        this.scale = scale;
+
+        var frc = new FontRenderContext(null, true, true);
+        var probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        var probeGraphics = probe.createGraphics();
+        this.metrics = probeGraphics.getFontMetrics(font);
+        probeGraphics.dispose();
+
+        int top = 0;
+        int bottom = this.metrics.getAscent() + this.metrics.getDescent();
+        int x = 0;
+        for (int i = 0; i < CHARACTERS.length(); i++) {
+            var c = CHARACTERS.charAt(i);
+            var bounds = font.createGlyphVector(frc, new char[]{c}).getVisualBounds();
+
+            this.advance[i] = this.metrics.charWidth(c);
+
+            // Leave room for glyph parts outside the advance box (italics, overhangs)
+            var left = Math.min(0, (int) Math.floor(bounds.getMinX())) - 1;
+            var right = Math.max(this.advance[i], (int) Math.ceil(bounds.getMaxX())) + 1;
+            this.originX[i] = -left;
+            this.spriteWidth[i] = right - left;
+            this.spriteX[i] = x;
+            x += this.spriteWidth[i];
+
+            top = Math.min(top, this.metrics.getAscent() + (int) Math.floor(bounds.getMinY()) - 1);
+            bottom = Math.max(bottom, this.metrics.getAscent() + (int) Math.ceil(bounds.getMaxY()) + 1);
+        }
+        this.spriteTop = top;
+        this.spriteHeight = bottom - top;
+
+        var digitAdvance = 0;
+        for (int i = 0; i <= 9; i++) {
+            digitAdvance = Math.max(digitAdvance, this.advance[i]);
+        }
+        for (int i = 0; i <= 9; i++) {
+            this.centerX[i] = (digitAdvance - this.advance[i]) / 2;
+            this.advance[i] = digitAdvance;
+        }
+
+        var width = (int) Math.ceil(x * scale);
+        var height = (int) Math.ceil(this.spriteHeight * scale);
+        this.image = config != null
+                ? config.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        var g = this.image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.scale(scale, scale);
+            g.setFont(font);
+            g.setColor(color);
+            for (int i = 0; i < CHARACTERS.length(); i++) {
+                g.drawString(String.valueOf(CHARACTERS.charAt(i)), this.spriteX[i] + this.originX[i],
+                        this.metrics.getAscent() - this.spriteTop);
+            }
+        } finally {
+            g.dispose();
+        }
+        Metrics.GLYPH_ATLAS_BYTES.addAndGet(this.getMemoryBytes());
+    }
+
+    public boolean matches(Font font, Color color, double scale) {
+        return this.font.equals(font) && this.color.equals(color) && this.scale == scale;
+    }
+
+    public double getScale() {
+        return this.scale;
+    }
+
+    private static int indexOf(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+
+        return switch (c) {
+            case ':' -> 10;
+            case '-' -> 11;
+            case '+' -> 12;
+            case '.' -> 13;
+            default -> -1;
+        };
+    }
+
+    public int getAdvance(char c) {
+        var index = indexOf(c);
+        return index >= 0 ? this.advance[index] : this.metrics.charWidth(c);
+    }
+
+    public int getLineHeight() {
+        return this.metrics.getAscent() + this.metrics.getDescent();
+    }
+
+    public int measure(char[] text, int length) {
+        var width = 0;
+        for (int i = 0; i < length; i++) {
+            width += this.getAdvance(text[i]);
+        }
+        return width;
+    }
+
+    /**
+     * Draws the text with the top left corner of the line at the given position.
+     */
+    public void draw(Graphics g, char[] text, int length, int x, int y) {
+        for (int i = 0; i < length; i++) {
+            x += this.drawGlyph(g, text[i], x, y);
+        }
+    }
+
+    /**
+     * Draws a single character with its pen position at x and the top of the line at y.
+     *
+     * @return advance of the character
+     */
+    public int drawGlyph(Graphics g, char c, int x, int y) {
+        var index = indexOf(c);
+        if (index < 0) {
+            // Not part of the atlas, fall back to regular text rendering
+            g.setFont(this.font);
+            g.setColor(this.color);
+            g.drawString(String.valueOf(c), x, y + this.metrics.getAscent());
+            return this.metrics.charWidth(c);
+        }
+
+        var dx = x + this.centerX[index] - this.originX[index];
+        var dy = y + this.spriteTop;
+        var sx = this.spriteX[index];
+        g.drawImage(this.image,
+                dx, dy, dx + this.spriteWidth[index], dy + this.spriteHeight,
+                (int) Math.round(sx * this.scale), 0,
+                (int) Math.round((sx + this.spriteWidth[index]) * this.scale), this.image.getHeight(),
+                null);
+        return this.advance[index];
+    }
+
+    /**
+     * Horizontal area a glyph may paint outside of its advance box, used to size repaint regions.
+     */
+    public int getOverhang() {
+        var overhang = 0;
+        for (int i = 0; i < CHARACTERS.length(); i++) {
+            var left = this.originX[i] - this.centerX[i];
+            overhang = Math.max(overhang, Math.max(left, this.spriteWidth[i] - left - this.advance[i]));
+        }
+        return overhang;
+    }
+
+    public int getSpriteTop() {
+        return this.spriteTop;
+    }
+
+    public int getSpriteHeight() {
+        return this.spriteHeight;
+    }
+
+    public long getMemoryBytes() {
+        return (long) this.image.getWidth() * this.image.getHeight() * 4;
+    }
+
+    public void flush() {
+        Metrics.GLYPH_ATLAS_BYTES.addAndGet(-this.getMemoryBytes());
+        this.image.flush();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import diag.Metrics;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decodes an image only as large as needed for the target size.
+ * <p>
+ * The dimensions are read from the header first, then the reader skips source pixels so the result
+ * still covers the target but never exceeds the memory budget.
+ */
+public class ImageDecoder {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final File file;
+
+    private final int targetWidth;
+
+    private final int targetHeight;
+
+    private final long budgetBytes;
+
+    private volatile ImageReader reader;
+
+    private volatile boolean aborted = false;
+
+    /**
+     * @param budgetBytes maximum size of the decoded pixels, 0 for no limit
+     */
+    public ImageDecoder(File file, int targetWidth, int targetHeight, long budgetBytes) {
+        this.file = file;
+        this.targetWidth = Math.max(1, targetWidth);
+        this.targetHeight = Math.max(1, targetHeight);
+        this.budgetBytes = budgetBytes;
+    }
+
+    public BufferedImage decode() throws IOException {
+        var start = System.nanoTime();
+        try (var input = ImageIO.createImageInputStream(this.file)) {
+            if (input == null)
+                throw new IOException("Cannot open " + this.file);
+
+            var readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext())
+                throw new IOException("Unsupported image format");
+
+            var reader = readers.next();
+            this.reader = reader;
+            try {
+                reader.setInput(input, true, true);
+
+                var width = reader.getWidth(0);
+                var height = reader.getHeight(0);
+                var factor = subsampling(width, height, this.targetWidth, this.targetHeight, this.budgetBytes);
+
+                var param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+
+                if (this.aborted)
+                    return null;
+                var image = reader.read(0, param);
+                if (this.aborted)
+                    return null;
+
+                Metrics.IMAGE_DECODE.record(System.nanoTime() - start);
+                return image;
+            } finally {
+                this.reader = null;
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Largest subsampling factor that still covers the target, raised further until the budget fits.
+     */
+    public static int subsampling(int width, int height, int targetWidth, int targetHeight, long budgetBytes) {
+        var factor = Math.max(1, Math.min(width / targetWidth, height / targetHeight));
+        if (budgetBytes > 0) {
+            while (decodedBytes(width, height, factor) > budgetBytes && factor < Math.max(width, height)) {
+                factor++;
+            }
+        }
+        return factor;
+    }
+
+    private static long decodedBytes(int width, int height, int factor) {
+        long w = (width + factor - 1) / factor;
+        long h = (height + factor - 1) / factor;
+        return w * h * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Stops a running decode, may be called from any thread.
+     */
+    public void abort() {
+        this.aborted = true;
+        var reader = this.reader;
+        if (reader != null)
+            reader.abort();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import data.Settings;
+import diag.Metrics;
+import timer.CountdownClock;
+import timer.TimeFormatter;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Renders the timer into an offscreen buffer and keeps the latest frame encoded for streaming.
+ * <p>
+ * Rendering and encoding run on a dedicated thread and only happen when the displayed text or the settings
+ * change. All consumers share the same encoded frame.
+ */
+public class OffscreenOutput implements CountdownClock.Listener {
+
+    public record Frame(long version, byte[] jpeg) {
+    }
+
+    private final TimerRenderer renderer;
+
+    private final TimeFormatter formatter = new TimeFormatter();
+
+    private final BufferedImage buffer;
+
+    // Guards the hand-over between ticks and the render thread
+    private final Object lock = new Object();
+
+    // Guards the pixels of the buffer while rendering or encoding
+    private final Object bufferLock = new Object();
+
+    private final char[] pendingText = new char[32];
+
+    private final char[] renderText = new char[32];
+
+    private int pendingLength = -1;
+
+    private boolean fullFrame = true;
+
+    private Frame frame = new Frame(0, new byte[0]);
+
+    // Guards the PNG, which is encoded from a copy of the buffer so rendering does not wait for it
+    private final Object pngLock = new Object();
+
+    private final BufferedImage pngBuffer;
+
+    private long pngVersion = -1;
+
+    private byte[] png;
+
+    private final ImageWriter jpegWriter;
+
+    private final ImageWriteParam jpegParam;
+
+    private volatile boolean closed = false;
+
+    private final Thread thread;
+
+    public OffscreenOutput(Settings settings, int width, int height) {
+        this.renderer = new TimerRenderer(settings);
+        this.buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pngBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        this.jpegWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        this.jpegParam = this.jpegWriter.getDefaultWriteParam();
+        this.jpegParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        this.jpegParam.setCompressionQuality(0.85f);
+
+        this.thread = new Thread(this::run, "OffscreenOutput-Renderer");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        this.thread.start();
+    }
+
+    public void close() {
+        this.closed = true;
+        this.thread.interrupt();
+    }
+
+    public int getWidth() {
+        return this.buffer.getWidth();
+    }
+
+    public int getHeight() {
+        return this.buffer.getHeight();
+    }
+
+    @Override
+    public void tick(long remainingNanos, long latenessNanos) {
+        var length = this.formatter.format(remainingNanos, this.renderer.getSettings().timeLayout);
+        synchronized (this.lock) {
+            System.arraycopy(this.formatter.getBuffer(), 0, this.pendingText, 0, length);
+            this.pendingLength = length;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Renders the whole frame again if the settings changed anything visible.
+     */
+    public void updateSettings(Settings settings) {
+        synchronized (this.bufferLock) {
+            if (this.renderer.updateSettings(settings, this.getWidth(), this.getHeight(), null) == null)
+                return;
+        }
+        synchronized (this.lock) {
+            this.fullFrame = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until a frame newer than the given version is available or the timeout elapsed.
+     */
+    public Frame awaitFrame(long afterVersion, long timeoutMillis) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this.lock) {
+            while (this.frame.version <= afterVersion) {
+                var wait = deadline - System.currentTimeMillis();
+                if (wait <= 0)
+                    break;
+                this.lock.wait(wait);
+            }
+            return this.frame;
+        }
+    }
+
+    public Frame getFrame() {
+        synchronized (this.lock) {
+            return this.frame;
+        }
+    }
+
+    /**
+     * PNG of the current frame, encoded on the first request and shared until the frame changes.
+     */
+    public byte[] getPng() {
+        synchronized (this.pngLock) {
+            long version;
+            synchronized (this.bufferLock) {
+                version = this.getFrame().version;
+                if (this.pngVersion == version)
+                    return this.png;
+                this.pngBuffer.setData(this.buffer.getRaster());
+            }
+            this.png = this.encode(this.pngBuffer, "png", null);
+            this.pngVersion = version;
+            return this.png;
+        }
+    }
+
+    private void run() {
+        var g = this.buffer.createGraphics();
+        try {
+            while (!this.closed) {
+                int length;
+                boolean full;
+                synchronized (this.lock) {
+                    while (this.pendingLength < 0 && !this.fullFrame) {
+                        this.lock.wait();
+                    }
+                    length = this.pendingLength;
+                    full = this.fullFrame;
+                    if (length >= 0)
+                        System.arraycopy(this.pendingText, 0, this.renderText, 0, length);
+                    this.pendingLength = -1;
+                    this.fullFrame = false;
+                }
+
+                // Ticks keep coming in while the frame is rendered and encoded
+                synchronized (this.bufferLock) {
+                    if (!this.render(g, length, full))
+                        continue;
+
+                    byte[] jpeg;
+                    try {
+                        jpeg = this.encode(this.buffer, "jpeg", this.jpegParam);
+                    } catch (UncheckedIOException e) {
+                        // The next change renders a new frame, until then the previous one stays
+                        System.err.println("Error on encoding frame: " + e.getCause().getMessage());
+                        continue;
+                    }
+                    synchronized (this.lock) {
+                        this.frame = new Frame(this.frame.version + 1, jpeg);
+                        this.lock.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            g.dispose();
+            this.jpegWriter.dispose();
+            this.renderer.flush();
+        }
+    }
+
+    private boolean render(Graphics2D g, int length, boolean full) {
+        var width = this.buffer.getWidth();
+        var height = this.buffer.getHeight();
+
+        Rectangle dirty = null;
+        if (length >= 0) {
+            dirty = this.renderer.updateText(this.renderText, length, width, height, null);
+        }
+
+        if (!full && dirty == null)
+            return false;
+
+        var start = System.nanoTime();
+        g.setClip(full ? null : dirty);
+        this.renderer.paint(g, width, height, null);
+        Metrics.PAINT_TIME.record(System.nanoTime() - start);
+        return true;
+    }
+
+    private byte[] encode(BufferedImage image, String format, ImageWriteParam param) {
+        try (var out = new ByteArrayOutputStream(64 * 1024)) {
+            if (param == null) {
+                ImageIO.write(image, format, out);
+            } else {
+                try (var stream = ImageIO.createImageOutputStream(out)) {
+                    this.jpegWriter.setOutput(stream);
+                    this.jpegWriter.write(null, new IIOImage(image, null, null), param);
+                }
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import diag.Metrics;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the render resources of recently used looks, so switching back to a profile does not decode,
+ * scale or rasterize anything again. Holds glyph atlases, background copies scaled to an output and
+ * decoded background images. The least recently used entries are released once the memory budget is
+ * exceeded, the entry used last always stays.
+ * <p>
+ * Scaled copies are keyed by the file and decode size of their source instead of the source image, so a cached
+ * copy never keeps a released decoded image alive and the budget bounds the memory actually held.
+ * <p>
+ * Thread-safe, resources are created outside of the lock so a slow build does not block other outputs.
+ */
+public final class ResourceCache {
+
+    private static final ResourceCache DEFAULT = new ResourceCache(256L * 1024 * 1024);
+
+    private record AtlasKey(Font font, Color color, double scale, GraphicsConfiguration config) {
+    }
+
+    private record DecodedKey(String path, int width, int height, long budgetBytes) {
+    }
+
+    private record ScaledKey(DecodedKey source, int width, int height, GraphicsConfiguration config) {
+    }
+
+    private record Entry(Object resource, long bytes) {
+    }
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long budgetBytes;
+
+    private long usedBytes = 0;
+
+    // Origin of the decoded images handed out, images compare by identity and are only referenced weakly
+    private final WeakHashMap<Image, DecodedKey> origins = new WeakHashMap<>();
+
+    public ResourceCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Cache shared by all outputs of the process.
+     */
+    public static ResourceCache getDefault() {
+        return DEFAULT;
+    }
+
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.evict();
+    }
+
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public GlyphAtlas getAtlas(Font font, Color color, double scale, GraphicsConfiguration config) {
+        return this.get(new AtlasKey(font, color, scale, config), () -> new GlyphAtlas(font, color, scale, config));
+    }
+
+    /**
+     * Copy of the image scaled to the given size in the format of the target device. Only copies of images
+     * decoded through this cache are kept, others are scaled for the caller alone.
+     *
+     * @param config graphics configuration of the target, null for offscreen rendering
+     */
+    public BufferedImage getScaled(Image source, int width, int height, GraphicsConfiguration config) {
+        DecodedKey origin;
+        synchronized (this) {
+            origin = this.origins.get(source);
+        }
+        if (origin == null)
+            return scale(source, width, height, config);
+
+        return this.get(new ScaledKey(origin, width, height, config), () -> {
+            var image = scale(source, width, height, config);
+            Metrics.SCALED_IMAGE_BYTES.addAndGet(Metrics.imageBytes(image));
+            return image;
+        });
+    }
+
+    /**
+     * Decoded image of a file as requested from the {@link ImageDecoder}, null if it is not cached.
+     */
+    public synchronized BufferedImage getDecoded(String path, int width, int height, long budgetBytes) {
+        var entry = this.entries.get(new DecodedKey(path, width, height, budgetBytes));
+        return entry != null ? (BufferedImage) entry.resource : null;
+    }
+
+    /**
+     * Adds a decoded image, returns the cached one if the same file was already decoded meanwhile.
+     */
+    public BufferedImage putDecoded(String path, int width, int height, long budgetBytes, BufferedImage image) {
+        var key = new DecodedKey(path, width, height, budgetBytes);
+        BufferedImage cached = this.get(key, () -> {
+            Metrics.DECODED_IMAGE_BYTES.addAndGet(Metrics.imageBytes(image));
+            return image;
+        });
+        synchronized (this) {
+            this.origins.put(cached, key);
+        }
+        return cached;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Object key, Supplier<T> factory) {
+        synchronized (this) {
+            var entry = this.entries.get(key);
+            if (entry != null)
+                return (T) entry.resource;
+        }
+
+        var resource = factory.get();
+        var entry = new Entry(resource, bytes(resource));
+        synchronized (this) {
+            // Another thread may have built the same resource meanwhile
+            var existing = this.entries.get(key);
+            if (existing != null) {
+                if (existing.resource != resource)
+                    release(key, entry);
+                return (T) existing.resource;
+            }
+
+            this.entries.put(key, entry);
+            this.usedBytes += entry.bytes;
+            this.evict();
+        }
+        return resource;
+    }
+
+    private void evict() {
+        var iterator = this.entries.entrySet().iterator();
+        while (this.usedBytes > this.budgetBytes && this.entries.size() > 1) {
+            Map.Entry<Object, Entry> eldest = iterator.next();
+            iterator.remove();
+            this.usedBytes -= eldest.getValue().bytes;
+            release(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private static long bytes(Object resource) {
+        if (resource instanceof GlyphAtlas atlas)
+            return atlas.getMemoryBytes();
+        return Metrics.imageBytes((Image) resource);
+    }
+
+    // Outputs that still draw a released resource keep working, flushing only drops accelerated copies
+    private static void release(Object key, Entry entry) {
+        if (entry.resource instanceof GlyphAtlas atlas) {
+            atlas.flush();
+        } else if (entry.resource instanceof BufferedImage image) {
+            if (key instanceof ScaledKey) {
+                Metrics.SCALED_IMAGE_BYTES.addAndGet(-entry.bytes);
+            } else if (key instanceof DecodedKey) {
+                Metrics.DECODED_IMAGE_BYTES.addAndGet(-entry.bytes);
+            }
+            image.flush();
+        }
+    }
+
+    private static BufferedImage scale(Image source, int width, int height, GraphicsConfiguration config) {
+        var transparency = source instanceof BufferedImage buffered
+                ? buffered.getTransparency() : Transparency.TRANSLUCENT;
+        var image = config != null
+                ? config.createCompatibleImage(width, height, transparency)
+                : new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                        ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+
+        var g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
@@ -17,10 +17,11 @@
 package gui;
 
 import data.Settings;
+import timer.CountdownClock;
+import timer.TimeFormatter;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.time.Duration;
@@ -31,29 +32,53 @@ public class TimerGUI extends JDialog  {
 
     public static final Color TRANSPARENT = new Color(0, 0, 0, 0);
 
-    private final Timer timer;
+    private final CountdownClock clock;
 
-    private long resetValue = 0;
+    private final TimeFormatter formatter = new TimeFormatter();
 
-    private long currentValue = 0;
+    private long currentNanos = 0;
 
-    private JLabel timerLabel;
+    private TimeFormatter.Layout layout = TimeFormatter.Layout.HH_MM_SS;
 
     private TimerPanel timerPanel;
 
     private Consumer<String> timerUpdateCallback;
 
+    // The callback only follows whole seconds, sub-second layouts would update it at the display rate
+    private final TimeFormatter callbackFormatter = new TimeFormatter();
+
+    private long callbackSeconds = Long.MIN_VALUE;
+
+    private TimeFormatter.Layout callbackLayout;
+
+    // Bounds of the output device when mirroring, otherwise the bounds from the settings are used
+    private Rectangle outputBounds;
+
+    // Always-on-top window around the text instead of a window covering the output
+    private boolean overlay = false;
+
+    private int overlayLength = -1;
+
     public TimerGUI() {
-        super(null, "TimerWindow", ModalityType.MODELESS);
-        this.timer = new Timer(1000, this::updateTimer);
+        this(new CountdownClock(), null);
     }
 
-    private void updateTimer(ActionEvent actionEvent) {
-        if (this.currentValue > 0) {
-            this.currentValue--;
+    /**
+     * Creates a timer window driven by the given clock. Several windows can share one clock to mirror
+     * the countdown on multiple displays.
+     *
+     * @param config configuration of the output device, null for the default device
+     */
+    public TimerGUI(CountdownClock clock, GraphicsConfiguration config) {
+        super(null, "TimerWindow", ModalityType.MODELESS, config);
+        this.clock = clock;
+        this.clock.addListener(this::updateTimer);
+    }
 
+    private void updateTimer(long remainingNanos, long latenessNanos) {
+        this.currentNanos = remainingNanos;
+        if (this.timerPanel != null)
             this.updateTimerText();
-        }
     }
 
     public void initialize(Settings settings) {
@@ -64,9 +89,17 @@ public class TimerGUI extends JDialog  {
         // Set up the content of the frame
         this.timerPanel = new TimerPanel(settings);
         this.timerPanel.setOpaque(true);
-        this.timerPanel.setLayout(new GridBagLayout());
 
-        this.timerLabel = new JLabel();
+        this.overlay = settings.overlay;
+        if (this.overlay) {
+            this.setAlwaysOnTop(true);
+            this.setFocusableWindowState(false);
+            this.setType(Type.UTILITY);
+            // Without per-pixel translucency the overlay shows the text on its background color
+            var device = this.getGraphicsConfiguration().getDevice();
+            this.timerPanel.setOpaque(!device.isWindowTranslucencySupported(GraphicsDevice.WindowTranslucency.PERPIXEL_TRANSLUCENT));
+            this.timerPanel.getRenderer().setOverlay(true);
+        }
         this.updateTimerText();
 
         var mouseAdapter = new MouseAdapter() {
@@ -93,27 +126,54 @@ public class TimerGUI extends JDialog  {
         this.updateAppearance(settings);
     }
 
+    /**
+     * Applies changed settings. The window is only moved or resized if its bounds changed, the panel only repaints
+     * what the change affects and the text is only formatted again for a new time layout.
+     */
     public void updateAppearance(Settings settings) {
-        this.timerPanel.remove(this.timerLabel);
+        var bounds = this.outputBounds != null ? this.outputBounds : settings.bounds;
+        if (!this.overlay && !bounds.equals(this.getBounds())) {
+            this.setBounds(bounds);
+        }
 
-        this.timerLabel.setForeground(settings.textColor);
-        this.timerLabel.setFont(settings.font.deriveFont(settings.font.getSize() * 4.0f));
+        // Text color and font are picked up by the glyph atlas of the panel
+        this.timerPanel.updateSettings(settings);
+        if (this.overlay)
+            this.updateOverlayBounds();
+        this.clock.setLayout(settings.timeLayout);
+        if (this.layout != settings.timeLayout) {
+            this.layout = settings.timeLayout;
+            this.updateTimerText();
+        }
+    }
 
-        var gbc = new GridBagConstraints();
-        gbc.anchor = settings.alignment.getGbcAlignment();
-        gbc.fill = GridBagConstraints.NONE;
-        gbc.weightx = 1d; // fixes the problem
-        gbc.weighty = 1d; // fixes the problem
-        gbc.insets = new Insets(settings.marginY, settings.marginX, settings.marginY, settings.marginX);
+    /**
+     * Paints the window from a render thread instead of Swing, meant for fullscreen windows. Keeps the Swing
+     * painting if the device does not support it.
+     */
+    public void startActiveRendering(Settings settings) {
+        if (!this.timerPanel.startActiveRendering(this, settings)) {
+            System.err.println("Falling back to Swing painting for " + this.getGraphicsConfiguration().getDevice().getIDstring());
+        } else if (!this.timerPanel.isPageFlipping()) {
+            System.err.println("No page flipping on " + this.getGraphicsConfiguration().getDevice().getIDstring()
+                    + ", frames are copied");
+        }
+    }
 
-        this.timerPanel.add(this.timerLabel, gbc);
-        this.timerPanel.updateSettings(settings);
+    private void updateOverlayBounds() {
+        var renderer = this.timerPanel.getRenderer();
+        var area = this.outputBounds != null ? this.outputBounds : renderer.getSettings().bounds;
+        var bounds = renderer.getOverlayBounds(area, this.getGraphicsConfiguration());
+        if (!bounds.equals(this.getBounds()))
+            this.setBounds(bounds);
+    }
 
-        this.timerLabel.setText("");
-        this.updateTimerText();
+    public void setOutputBounds(Rectangle outputBounds) {
+        this.outputBounds = outputBounds;
+    }
 
-        this.setLocation(settings.bounds.x, settings.bounds.y);
-        this.setSize(settings.bounds.width, settings.bounds.height);
+    public void setBackgroundAnimation(AnimatedBackground animation) {
+        this.timerPanel.setAnimation(animation);
     }
 
     public void setSize(Rectangle bounds) {
@@ -123,42 +183,38 @@ public class TimerGUI extends JDialog  {
     }
 
     private void updateTimerText() {
-        var hours = this.currentValue / 3600;
-        var minutes = (this.currentValue % 3600) / 60;
-        var seconds = this.currentValue % 60;
+        var length = this.formatter.format(this.currentNanos, this.layout);
+        this.timerPanel.setText(this.formatter.getBuffer(), length);
+        // Digits share one width, so the overlay only changes its size with the number of characters
+        if (this.overlay && length != this.overlayLength) {
+            this.overlayLength = length;
+            this.updateOverlayBounds();
+        }
 
-        var text = String.format("%02d:%02d:%02d", hours, minutes, seconds);
-        this.timerLabel.setText(text);
-        if (this.timerUpdateCallback != null)
-            this.timerUpdateCallback.accept(text);
+        // Only allocate a String if somebody needs one and the seconds changed
+        var seconds = CountdownClock.toDisplayedSeconds(this.currentNanos);
+        if (this.timerUpdateCallback != null && (seconds != this.callbackSeconds || this.layout != this.callbackLayout)) {
+            this.callbackSeconds = seconds;
+            this.callbackLayout = this.layout;
+            this.callbackFormatter.format(this.currentNanos, this.layout.withoutFraction());
+            this.timerUpdateCallback.accept(this.callbackFormatter.toString());
+        }
     }
 
     public void start() {
-        this.timer.start();
+        this.clock.start();
     }
 
     public void stop() {
-        this.timer.stop();
+        this.clock.stop();
     }
 
     public void reset() {
-        this.currentValue = this.resetValue;
-        this.updateTimerText();
-
-        if (this.timer.isRunning()) {
-            this.timer.restart();
-        }
+        this.clock.reset();
     }
 
     public void setCountdown(Duration duration) {
-        this.resetValue = duration.getSeconds();
-        this.currentValue = duration.getSeconds();
-
-        this.updateTimerText();
-
-        if (this.timer.isRunning()) {
-            this.timer.restart();
-        }
+        this.clock.setCountdown(duration);
     }
 
     public void setCountdownToTime(LocalDateTime target) {
@@ -169,7 +225,12 @@ public class TimerGUI extends JDialog  {
     }
 
 
+    public CountdownClock getClock() {
+        return this.clock;
+    }
+
     public void setTimerUpdateCallback(Consumer<String> timerUpdateCallback) {
         this.timerUpdateCallback = timerUpdateCallback;
+        this.callbackLayout = null;
     }
 }
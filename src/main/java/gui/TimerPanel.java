@@ -17,44 +17,152 @@
 package gui;
 
 import data.Settings;
+import diag.Metrics;
 
 import javax.swing.*;
 import java.awt.*;
 
 public class TimerPanel extends JPanel {
-    private Settings settings;
+    private final TimerRenderer renderer;
+
+    private final Runnable frameListener = this::requestFrame;
+
+    // Render thread painting the window instead of Swing, null for regular painting
+    private ActiveRenderer active;
+
+    // Window to render actively again once the background mode allows it
+    private Window activeWindow;
+
+    private AnimatedBackground animation;
 
     // Constructor to set the background image
     public TimerPanel(Settings settings) {
-        this.settings = settings;
+        this.renderer = new TimerRenderer(settings);
         this.setBackground(TimerGUI.TRANSPARENT);
     }
 
     @Override
     protected void paintComponent(Graphics g) {
+        // The render thread owns the window
+        if (this.active != null)
+            return;
+
+        var start = System.nanoTime();
         super.paintComponent(g);
 
-        g.clearRect(0, 0, getWidth(), getHeight());
+        // Only the repainted area is cleared, for an overlay the compositor then only updates the changed glyphs
+        var clip = g.getClipBounds();
+        if (clip != null) {
+            g.clearRect(clip.x, clip.y, clip.width, clip.height);
+        } else {
+            g.clearRect(0, 0, getWidth(), getHeight());
+        }
+
+        this.renderer.paint(g, getWidth(), getHeight(), getGraphicsConfiguration());
+        Metrics.PAINT_TIME.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Moves the painting of the window to a render thread, see {@link ActiveRenderer}.
+     *
+     * @return false if Swing keeps painting the window
+     */
+    public boolean startActiveRendering(Window window, Settings settings) {
+        if (this.active != null)
+            return true;
+
+        this.active = ActiveRenderer.start(window, this.renderer);
+        if (this.active == null)
+            return false;
+
+        this.activeWindow = window;
+        this.active.updateSettings(settings);
+        return true;
+    }
+
+    /**
+     * Hands the painting back to Swing, e.g. for a transparent background the back buffer cannot show.
+     */
+    private void stopActiveRendering() {
+        // Joins the render thread, the renderer is only used here afterwards
+        this.active.close();
+        this.active = null;
+        this.repaint();
+    }
+
+    public boolean isPageFlipping() {
+        return this.active != null && this.active.isPageFlipping();
+    }
+
+    private void requestFrame() {
+        if (this.active != null) {
+            this.active.requestFrame();
+        } else {
+            this.repaint();
+        }
+    }
 
-        // Draw the background image
-        switch (settings.mode) {
-            case COLOR:
-                g.setColor(settings.backgroundColor);
-                g.fillRect(0, 0, getWidth(), getHeight());
-                break;
-            case IMAGE:
-                g.drawImage(this.settings.backgroundImage, 0, 0, getWidth(), getHeight(), this);
-                break;
-            case TRANSPARENT:
-                /*g.setColor(TimerGUI.TRANSPARENT);
-                g.fillRect(0, 0, getWidth(), getHeight());*/
-                break;
+    public void setText(char[] text, int length) {
+        if (this.active != null) {
+            this.active.setText(text, length);
+            return;
         }
+
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            this.renderer.setText(text, length);
+            this.repaint();
+            return;
+        }
+
+        // Only repaint the character cells that changed, the background cache fills in underneath
+        var dirty = this.renderer.updateText(text, length, getWidth(), getHeight(), getGraphicsConfiguration());
+        if (dirty != null)
+            this.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+    }
+
+    public void setAnimation(AnimatedBackground animation) {
+        if (this.animation != null)
+            this.animation.removeFrameListener(this.frameListener);
+
+        this.animation = animation;
+        this.renderer.setAnimation(animation);
+        if (animation != null)
+            animation.addFrameListener(this.frameListener);
+        this.requestFrame();
+    }
+
+    public TimerRenderer getRenderer() {
+        return this.renderer;
     }
 
     public void updateSettings(Settings settings) {
-        this.settings = settings;
-        this.repaint();
+        var transparent = settings.mode == Settings.BackgroundMode.TRANSPARENT;
+        if (this.active != null && transparent) {
+            this.stopActiveRendering();
+        } else if (this.active == null && this.activeWindow != null && !transparent) {
+            this.active = ActiveRenderer.start(this.activeWindow, this.renderer);
+        }
+        if (this.active != null) {
+            this.active.updateSettings(settings);
+            return;
+        }
+
+        var dirty = this.renderer.updateSettings(settings, getWidth(), getHeight(), getGraphicsConfiguration());
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            this.repaint();
+        } else if (dirty != null) {
+            this.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+        }
     }
 
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        if (this.active != null) {
+            this.active.close();
+            this.active = null;
+        }
+        this.activeWindow = null;
+        this.renderer.flush();
+    }
 }
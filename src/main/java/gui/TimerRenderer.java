@@ -0,0 +1,393 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package gui;
+
+import data.Settings;
+
+import java.awt.*;
+
+/**
+ * Paints the timer look (background and countdown text) onto any graphics context.
+ * Holds the render caches, so one instance should be used per output.
+ */
+public class TimerRenderer {
+
+    public static final float FONT_SCALE = 4.0f;
+
+    private final BackgroundCache backgroundCache = new BackgroundCache();
+
+    private GlyphAtlas atlas;
+
+    // Set on the event dispatch thread, read by an active render thread
+    private volatile AnimatedBackground animation;
+
+    private Settings settings;
+
+    // Look as of the last settings update, the settings object itself is changed in place
+    private Settings applied;
+
+    private Image appliedImage;
+
+    private Font sourceFont;
+
+    private Font displayFont;
+
+    private final FontFitter fitter = new FontFitter();
+
+    // Font size chosen by the fitter, only used in auto-fit mode
+    private float fittedSize;
+
+    private final char[] text = new char[32];
+
+    private int length = 0;
+
+    // Line box of the text as laid out for the last frame
+    private final Rectangle textBounds = new Rectangle();
+
+    private final Rectangle dirty = new Rectangle();
+
+    private final Rectangle clip = new Rectangle();
+
+    // Surface is a window around the text, the margins and alignment place the window instead of the text
+    private boolean overlay = false;
+
+    // Area the overlay window is placed in, the text is fitted to it in auto-fit mode
+    private final Rectangle overlayArea = new Rectangle();
+
+    public TimerRenderer(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Takes over changed settings and computes the part of the surface that has to be repainted:
+     * everything if the background changed, otherwise the old and the new line box if the text look
+     * or position changed. A changed time layout is picked up by the next {@link #updateText}.
+     *
+     * @return the dirty area, which is reused between calls, or null if nothing visible changed
+     */
+    public Rectangle updateSettings(Settings settings, int width, int height, GraphicsConfiguration config) {
+        var previous = this.applied;
+        var previousImage = this.appliedImage;
+        this.settings = settings;
+        this.applied = settings.copyAppearance();
+        this.appliedImage = settings.backgroundImage;
+
+        if (settings.mode != Settings.BackgroundMode.IMAGE) {
+            this.backgroundCache.flush();
+        }
+
+        this.dirty.setBounds(0, 0, 0, 0);
+        if (previous == null || this.atlas == null || previous.mode != settings.mode
+                || !previous.backgroundColor.equals(settings.backgroundColor) || previousImage != settings.backgroundImage) {
+            this.dirty.setBounds(0, 0, width, height);
+            return this.dirty;
+        }
+
+        var lookChanged = !previous.font.equals(settings.font) || !previous.textColor.equals(settings.textColor)
+                || previous.autoFit != settings.autoFit;
+        var moved = previous.alignment != settings.alignment
+                || previous.marginX != settings.marginX || previous.marginY != settings.marginY;
+        if (!lookChanged && !moved)
+            return null;
+
+        // The old line box is measured with the old glyphs, which stay in the resource cache
+        this.addLineBox(this.atlas);
+        this.fitText(this.text, this.length, width, height);
+        var atlas = this.getAtlas(config);
+        this.layoutText(atlas, width, height);
+        this.addLineBox(atlas);
+        return this.dirty;
+    }
+
+    private void addLineBox(GlyphAtlas atlas) {
+        var overhang = atlas.getOverhang();
+        this.addDirty(this.textBounds.x - overhang, this.textBounds.y + atlas.getSpriteTop(),
+                this.textBounds.width + 2 * overhang, atlas.getSpriteHeight());
+    }
+
+    public void setAnimation(AnimatedBackground animation) {
+        this.animation = animation;
+    }
+
+    public Settings getSettings() {
+        return this.settings;
+    }
+
+    public void setText(char[] text, int length) {
+        this.length = Math.min(length, this.text.length);
+        System.arraycopy(text, 0, this.text, 0, this.length);
+    }
+
+    /**
+     * Replaces the text and computes which part of the surface has to be repainted.
+     * Only character cells that differ from the previous text are included, unless the layout shifted
+     * or auto-fit picked another font size.
+     *
+     * @return the dirty area, which is reused between calls, or null if nothing changed
+     */
+    public Rectangle updateText(char[] text, int length, int width, int height, GraphicsConfiguration config) {
+        var newLength = Math.min(length, this.text.length);
+        var previousAtlas = this.atlas;
+        this.fitText(text, newLength, width, height);
+        var atlas = this.getAtlas(config);
+        var oldAtlas = previousAtlas != null ? previousAtlas : atlas;
+        var newWidth = atlas.measure(text, newLength);
+
+        // The old line box is measured with the glyphs it was painted with
+        var overhang = oldAtlas.getOverhang();
+        var top = this.textBounds.y + oldAtlas.getSpriteTop();
+        var spriteHeight = oldAtlas.getSpriteHeight();
+
+        var oldX = this.textBounds.x;
+        var oldWidth = oldAtlas.measure(this.text, this.length);
+        this.dirty.setBounds(0, 0, 0, 0);
+
+        var sameLayout = atlas == oldAtlas && newLength == this.length && newWidth == oldWidth;
+        if (sameLayout) {
+            var x = oldX;
+            for (int i = 0; i < newLength; i++) {
+                var c = text[i];
+                var advance = atlas.getAdvance(c);
+                if (c != this.text[i]) {
+                    this.addDirty(x - overhang, top, advance + 2 * overhang, spriteHeight);
+                }
+                x += advance;
+            }
+        }
+
+        this.length = newLength;
+        System.arraycopy(text, 0, this.text, 0, newLength);
+
+        if (!sameLayout) {
+            // Text moved or changed its width, repaint the old and the new line box
+            this.addDirty(oldX - overhang, top, oldWidth + 2 * overhang, spriteHeight);
+            this.layoutText(atlas, width, height);
+            this.addLineBox(atlas);
+        }
+
+        return this.dirty.isEmpty() ? null : this.dirty;
+    }
+
+    private void addDirty(int x, int y, int width, int height) {
+        if (this.dirty.isEmpty()) {
+            this.dirty.setBounds(x, y, width, height);
+        } else {
+            var x2 = Math.max(this.dirty.x + this.dirty.width, x + width);
+            var y2 = Math.max(this.dirty.y + this.dirty.height, y + height);
+            this.dirty.x = Math.min(this.dirty.x, x);
+            this.dirty.y = Math.min(this.dirty.y, y);
+            this.dirty.width = x2 - this.dirty.x;
+            this.dirty.height = y2 - this.dirty.y;
+        }
+    }
+
+    /**
+     * Picks the font size for auto-fit mode. The fitter caches its result, so this only measures again if
+     * the number of characters, the font or the space inside the margins changed.
+     */
+    private void fitText(char[] text, int length, int width, int height) {
+        if (this.overlay) {
+            width = this.overlayArea.width;
+            height = this.overlayArea.height;
+        }
+        if (this.settings.autoFit) {
+            this.fittedSize = this.fitter.fit(this.settings.font, text, length,
+                    width - 2 * this.settings.marginX, height - 2 * this.settings.marginY);
+        }
+    }
+
+    private Font getDisplayFont() {
+        var size = this.settings.autoFit && this.fittedSize > 0
+                ? this.fittedSize : this.settings.font.getSize() * FONT_SCALE;
+        if (this.sourceFont != this.settings.font || this.displayFont.getSize2D() != size) {
+            this.sourceFont = this.settings.font;
+            this.displayFont = this.settings.font.deriveFont(size);
+        }
+        return this.displayFont;
+    }
+
+    private static Font displayFont(Font font) {
+        return font.deriveFont(font.getSize() * FONT_SCALE);
+    }
+
+    private static double scale(GraphicsConfiguration config) {
+        return config != null ? config.getDefaultTransform().getScaleX() : 1.0;
+    }
+
+    /**
+     * Returns the atlas for the current settings, taking it from the resource cache if the font, color or device
+     * scale changed.
+     */
+    public GlyphAtlas getAtlas(GraphicsConfiguration config) {
+        var scale = scale(config);
+        var font = this.getDisplayFont();
+        if (this.atlas == null || !this.atlas.matches(font, this.settings.textColor, scale)) {
+            this.atlas = ResourceCache.getDefault().getAtlas(font, this.settings.textColor, scale, config);
+        }
+        return this.atlas;
+    }
+
+    /**
+     * Builds the glyph atlas and the scaled background of a look ahead of time, so switching to it only takes
+     * one frame. May be called from any thread.
+     *
+     * @param background decoded background image of the look, null if it has none
+     */
+    public static void warm(Settings look, Image background, int width, int height, GraphicsConfiguration config) {
+        var cache = ResourceCache.getDefault();
+        // With auto-fit the size depends on the text, so the atlas is only built once it is shown
+        if (!look.autoFit)
+            cache.getAtlas(displayFont(look.font), look.textColor, scale(config), config);
+        if (look.mode == Settings.BackgroundMode.IMAGE && background != null && width > 0 && height > 0)
+            cache.getScaled(background, width, height, config);
+    }
+
+    /**
+     * Places the line box of the text like a label anchored inside the margins.
+     */
+    private void layoutText(GlyphAtlas atlas, int width, int height) {
+        var textWidth = atlas.measure(this.text, this.length);
+        var textHeight = atlas.getLineHeight();
+
+        if (this.overlay) {
+            this.textBounds.setBounds(atlas.getOverhang(), -atlas.getSpriteTop(), textWidth, textHeight);
+            return;
+        }
+
+        var left = this.settings.marginX;
+        var top = this.settings.marginY;
+        var freeX = width - 2 * this.settings.marginX - textWidth;
+        var freeY = height - 2 * this.settings.marginY - textHeight;
+
+        var x = switch (this.settings.alignment) {
+            case TOP_LEFT, MIDDLE_LEFT, BOTTOM_LEFT -> left;
+            case TOP_CENTER, MIDDLE_CENTER, BOTTOM_CENTER -> left + freeX / 2;
+            case TOP_RIGHT, MIDDLE_RIGHT, BOTTOM_RIGHT -> left + freeX;
+        };
+        var y = switch (this.settings.alignment) {
+            case TOP_LEFT, TOP_CENTER, TOP_RIGHT -> top;
+            case MIDDLE_LEFT, MIDDLE_CENTER, MIDDLE_RIGHT -> top + freeY / 2;
+            case BOTTOM_LEFT, BOTTOM_CENTER, BOTTOM_RIGHT -> top + freeY;
+        };
+        this.textBounds.setBounds(x, y, textWidth, textHeight);
+    }
+
+    public void setOverlay(boolean overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * Computes the bounds of an overlay window that just holds the current text, placed inside the area by the
+     * alignment and margins of the settings. Only changes if the number of characters, the font or the area does.
+     */
+    public Rectangle getOverlayBounds(Rectangle area, GraphicsConfiguration config) {
+        this.overlayArea.setBounds(area);
+        this.fitText(this.text, this.length, area.width, area.height);
+        var atlas = this.getAtlas(config);
+
+        var width = atlas.measure(this.text, this.length) + 2 * atlas.getOverhang();
+        var height = atlas.getSpriteHeight();
+        var freeX = area.width - 2 * this.settings.marginX - width;
+        var freeY = area.height - 2 * this.settings.marginY - height;
+
+        var x = switch (this.settings.alignment) {
+            case TOP_LEFT, MIDDLE_LEFT, BOTTOM_LEFT -> 0;
+            case TOP_CENTER, MIDDLE_CENTER, BOTTOM_CENTER -> freeX / 2;
+            case TOP_RIGHT, MIDDLE_RIGHT, BOTTOM_RIGHT -> freeX;
+        };
+        var y = switch (this.settings.alignment) {
+            case TOP_LEFT, TOP_CENTER, TOP_RIGHT -> 0;
+            case MIDDLE_LEFT, MIDDLE_CENTER, MIDDLE_RIGHT -> freeY / 2;
+            case BOTTOM_LEFT, BOTTOM_CENTER, BOTTOM_RIGHT -> freeY;
+        };
+        return new Rectangle(area.x + this.settings.marginX + x, area.y + this.settings.marginY + y, width, height);
+    }
+
+    public Rectangle getTextBounds() {
+        return this.textBounds;
+    }
+
+    public void paint(Graphics g, int width, int height, GraphicsConfiguration config) {
+        this.paintBackground(g, width, height, config);
+        this.paintText(g, width, height, config);
+    }
+
+    public void paintBackground(Graphics g, int width, int height, GraphicsConfiguration config) {
+        switch (this.settings.mode) {
+            case COLOR -> {
+                g.setColor(this.settings.backgroundColor);
+                g.fillRect(0, 0, width, height);
+            }
+            case IMAGE -> {
+                var frame = this.animation != null ? this.animation.getCurrentFrame(width, height) : null;
+                if (frame != null) {
+                    // Animation frames are already scaled to the output, transparent parts show the color
+                    g.setColor(this.settings.backgroundColor);
+                    g.fillRect(0, 0, width, height);
+                    if (frame.getWidth() == width && frame.getHeight() == height) {
+                        g.drawImage(frame, 0, 0, null);
+                    } else {
+                        g.drawImage(frame, 0, 0, width, height, null);
+                    }
+                    return;
+                }
+
+                // The blit is clipped, so partial repaints only copy the dirty part of the cached image
+                var scaled = this.backgroundCache.get(this.settings.backgroundImage, width, height, config);
+                if (scaled != null) {
+                    g.drawImage(scaled, 0, 0, width, height, null);
+                } else {
+                    // Placeholder while the image is still being decoded
+                    g.setColor(this.settings.backgroundColor);
+                    g.fillRect(0, 0, width, height);
+                }
+            }
+            case TRANSPARENT -> {
+            }
+        }
+    }
+
+    public void paintText(Graphics g, int width, int height, GraphicsConfiguration config) {
+        this.fitText(this.text, this.length, width, height);
+        var atlas = this.getAtlas(config);
+        this.layoutText(atlas, width, height);
+
+        var x = this.textBounds.x;
+        var y = this.textBounds.y;
+        // The rectangle is left untouched if no clip is set
+        this.clip.setBounds(0, 0, width, height);
+        g.getClipBounds(this.clip);
+
+        // Skip glyphs that are completely outside of the repainted area
+        var overhang = atlas.getOverhang();
+        for (int i = 0; i < this.length; i++) {
+            var advance = atlas.getAdvance(this.text[i]);
+            if (x + advance + overhang > this.clip.x && x - overhang < this.clip.x + this.clip.width) {
+                atlas.drawGlyph(g, this.text[i], x, y);
+            }
+            x += advance;
+        }
+    }
+
+    /**
+     * Drops the references to the render resources, they stay in the resource cache until they are evicted.
+     */
+    public void flush() {
+        this.backgroundCache.flush();
+        this.atlas = null;
+    }
+}
@@ -17,7 +17,11 @@
 package gui;
 
 import java.io.File;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
 
 public final class Utils {
 
@@ -44,4 +48,17 @@ public final class Utils {
         return ext;
     }
 
+    /*
+     * Next occurrence of a clock time in the CLOCK_TIME_FORMATTER format, today or tomorrow.
+     */
+    public static LocalDateTime nextClockTime(String text) throws DateTimeException {
+        var daySeconds = CLOCK_TIME_FORMATTER.parse(text).get(ChronoField.SECOND_OF_DAY);
+
+        var localTime = LocalDate.now().atStartOfDay().plusSeconds(daySeconds);
+        if (localTime.isBefore(LocalDateTime.now())) {
+            localTime = localTime.plusDays(1);
+        }
+        return localTime;
+    }
+
 }
@@ -0,0 +1,244 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net;
+
+import timer.CountdownClock;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the countdowns of several machines in sync over UDP.
+ * <p>
+ * The leader sends its clock state in small fixed-size packets, immediately on every change and as a heartbeat.
+ * Followers estimate the offset between the monotonic clocks with a minimum filter over recent packets, which
+ * removes network jitter, and only move their deadline if it is off by more than a small tolerance. Followers
+ * keep counting on their own if packets are lost.
+ */
+public class ClusterSync {
+
+    public enum Role {
+        LEADER,
+        FOLLOWER
+    }
+
+    private static final int MAGIC = 0x5343444E;
+
+    private static final byte VERSION = 1;
+
+    // magic, version, flags, reserved, leader id, sequence, send time, remaining, reset value
+    static final int PACKET_SIZE = 4 + 1 + 1 + 2 + 4 + 4 + 8 + 8 + 8;
+
+    private static final int FLAG_RUNNING = 1;
+
+    private static final int HEARTBEAT_MILLIS = 250;
+
+    // About four seconds of heartbeats
+    private static final int OFFSET_WINDOW = 16;
+
+    private static final long TOLERANCE_NANOS = 2_000_000;
+
+    private final Role role;
+
+    private final CountdownClock clock;
+
+    private final DatagramSocket socket;
+
+    private final List<InetSocketAddress> targets;
+
+    // Leader state
+    private final int leaderId = ThreadLocalRandom.current().nextInt();
+
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(PACKET_SIZE);
+
+    private final DatagramPacket sendPacket = new DatagramPacket(this.sendBuffer.array(), PACKET_SIZE);
+
+    private int sequence = 0;
+
+    private Timer heartbeat;
+
+    // Follower state, only touched by the receiver thread
+    private final long[] offsets = new long[OFFSET_WINDOW];
+
+    private int offsetCount = 0;
+
+    private int offsetIndex = 0;
+
+    private int currentLeader;
+
+    private int lastSequence;
+
+    private Thread receiver;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param port    local port, followers receive on it
+     * @param group   multicast group to join or send to, null for unicast
+     * @param targets unicast receivers of the leader, only used without a group
+     */
+    public ClusterSync(Role role, CountdownClock clock, int port, InetAddress group, List<InetSocketAddress> targets)
+            throws IOException {
+        this.role = role;
+        this.clock = clock;
+
+        if (group != null) {
+            var socket = new MulticastSocket(role == Role.FOLLOWER ? port : 0);
+            if (role == Role.FOLLOWER)
+                socket.joinGroup(new InetSocketAddress(group, port), null);
+            this.socket = socket;
+            this.targets = List.of(new InetSocketAddress(group, port));
+        } else {
+            this.socket = role == Role.FOLLOWER ? new DatagramSocket(port) : new DatagramSocket();
+            this.targets = new ArrayList<>(targets);
+        }
+    }
+
+    /**
+     * Starts sending or receiving. Must be called on the event dispatch thread.
+     */
+    public void start() {
+        if (this.role == Role.LEADER) {
+            this.clock.addListener(new CountdownClock.Listener() {
+                @Override
+                public void tick(long remainingNanos, long latenessNanos) {
+                }
+
+                @Override
+                public void stateChanged(CountdownClock clock) {
+                    ClusterSync.this.send();
+                }
+            });
+
+            this.heartbeat = new Timer(HEARTBEAT_MILLIS, e -> this.send());
+            this.heartbeat.start();
+            this.send();
+        } else {
+            this.receiver = new Thread(this::receive, "ClusterSync-Receiver");
+            this.receiver.setDaemon(true);
+            this.receiver.start();
+        }
+    }
+
+    public void close() {
+        this.closed = true;
+        if (this.heartbeat != null)
+            this.heartbeat.stop();
+        this.socket.close();
+    }
+
+    private void send() {
+        var buffer = this.sendBuffer;
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) (this.clock.isRunning() ? FLAG_RUNNING : 0));
+        buffer.putShort((short) 0);
+        buffer.putInt(this.leaderId);
+        buffer.putInt(++this.sequence);
+        buffer.putLong(System.nanoTime());
+        buffer.putLong(this.clock.getRemainingNanos());
+        buffer.putLong(this.clock.getResetNanos());
+
+        for (InetSocketAddress target : this.targets) {
+            try {
+                this.sendPacket.setSocketAddress(target);
+                this.socket.send(this.sendPacket);
+            } catch (IOException e) {
+                System.err.println("Cluster packet to " + target + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void receive() {
+        var data = new byte[PACKET_SIZE];
+        var packet = new DatagramPacket(data, data.length);
+        var buffer = ByteBuffer.wrap(data);
+
+        while (!this.closed) {
+            try {
+                packet.setLength(data.length);
+                this.socket.receive(packet);
+                var receivedNanos = System.nanoTime();
+                if (packet.getLength() != PACKET_SIZE)
+                    continue;
+
+                buffer.clear();
+                if (buffer.getInt() != MAGIC || buffer.get() != VERSION)
+                    continue;
+
+                var running = (buffer.get() & FLAG_RUNNING) != 0;
+                buffer.getShort();
+                var leader = buffer.getInt();
+                var sequence = buffer.getInt();
+                var sentNanos = buffer.getLong();
+                var remaining = buffer.getLong();
+                var reset = buffer.getLong();
+
+                this.apply(leader, sequence, receivedNanos - sentNanos, sentNanos, running, remaining, reset);
+            } catch (SocketException e) {
+                // socket closed
+            } catch (IOException e) {
+                System.err.println("Error on receiving cluster packet: " + e.getMessage());
+            }
+        }
+    }
+
+    private void apply(int leader, int sequence, long offsetSample, long sentNanos, boolean running,
+                       long remaining, long reset) {
+        if (leader != this.currentLeader || this.offsetCount == 0) {
+            // New or restarted leader, its clock is unrelated to the previous one
+            this.currentLeader = leader;
+            this.offsetCount = 0;
+            this.offsetIndex = 0;
+        } else if (sequence - this.lastSequence <= 0) {
+            // Duplicate or reordered packet
+            return;
+        }
+        this.lastSequence = sequence;
+
+        this.offsets[this.offsetIndex] = offsetSample;
+        this.offsetIndex = (this.offsetIndex + 1) % OFFSET_WINDOW;
+        this.offsetCount = Math.min(this.offsetCount + 1, OFFSET_WINDOW);
+
+        // The sample with the smallest delay is the least disturbed by queuing in the network
+        var offset = Long.MAX_VALUE;
+        for (int i = 0; i < this.offsetCount; i++) {
+            offset = Math.min(offset, this.offsets[i]);
+        }
+        var deadline = sentNanos + offset + remaining;
+
+        SwingUtilities.invokeLater(() -> {
+            var stateChanged = running != this.clock.isRunning() || reset != this.clock.getResetNanos();
+            if (stateChanged || (running
+                    ? Math.abs(deadline - this.clock.getDeadlineNanos()) > TOLERANCE_NANOS
+                    : Math.abs(remaining - this.clock.getRemainingNanos()) > TOLERANCE_NANOS)) {
+                this.clock.synchronize(running, deadline, remaining, reset);
+            }
+        });
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import diag.Metrics;
+import gui.Utils;
+import timer.CountdownClock;
+import timer.TimeFormatter;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Remote control of a {@link CountdownClock} over HTTP, e.g. from a console or a Stream Deck.
+ * <ul>
+ *     <li>{@code /start}, {@code /stop}, {@code /reset}</li>
+ *     <li>{@code /preset?duration=00:05:00} - sets and resets the countdown</li>
+ *     <li>{@code /target?time=10:00} - counts down to the next occurrence of a clock time and starts</li>
+ *     <li>{@code /state} - current state as JSON</li>
+ *     <li>{@code /metrics} - timing and memory metrics in the Prometheus text format</li>
+ * </ul>
+ * Commands change a running show, so they are only accepted as {@code POST}, which a web page cannot send
+ * unnoticed by a simple link or image. Commands are validated on the request thread and acknowledged with
+ * {@code 202} as soon as they are queued.
+ * Queued commands are applied in order on the event dispatch thread, a burst only costs a single event.
+ */
+public class ControlServer {
+
+    private record State(boolean running, long remainingNanos, long deadlineNanos, long resetNanos) {
+    }
+
+    private final CountdownClock clock;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    // Published by the event dispatch thread, so reading the state never waits for it
+    private volatile State state = new State(false, 0, 0, 0);
+
+    /**
+     * Must be created on the event dispatch thread.
+     */
+    public ControlServer(CountdownClock clock, InetSocketAddress address) throws IOException {
+        this.clock = clock;
+        this.server = HttpServer.create(address, 0);
+        this.executor = createExecutor();
+        this.server.setExecutor(this.executor);
+
+        this.server.createContext("/start", exchange -> this.command(exchange, clock::start));
+        this.server.createContext("/stop", exchange -> this.command(exchange, clock::stop));
+        this.server.createContext("/reset", exchange -> this.command(exchange, clock::reset));
+        this.server.createContext("/preset", this::preset);
+        this.server.createContext("/target", this::target);
+        this.server.createContext("/state", this::sendState);
+        this.server.createContext("/metrics", exchange -> this.send(exchange, 200,
+                "text/plain; version=0.0.4; charset=utf-8", Metrics.toText()));
+
+        clock.addListener(new CountdownClock.Listener() {
+            @Override
+            public void tick(long remainingNanos, long latenessNanos) {
+                // Regular ticks only count down towards the published deadline, /state computes the remaining
+                // time itself. A follower of a cluster moves the deadline without a state change though.
+                if (ControlServer.this.isStale())
+                    ControlServer.this.publishState();
+            }
+
+            @Override
+            public void stateChanged(CountdownClock clock) {
+                ControlServer.this.publishState();
+            }
+        });
+        this.publishState();
+    }
+
+    /**
+     * Virtual threads if the runtime has them, so many idle controllers cost next to nothing.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "ControlServer-Client");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.server.getAddress();
+    }
+
+    private boolean isStale() {
+        var state = this.state;
+        if (state.running != this.clock.isRunning() || state.resetNanos != this.clock.getResetNanos())
+            return true;
+        return state.running
+                ? state.deadlineNanos != this.clock.getDeadlineNanos()
+                : state.remainingNanos != this.clock.getRemainingNanos();
+    }
+
+    private void publishState() {
+        this.state = new State(this.clock.isRunning(), this.clock.getRemainingNanos(), this.clock.getDeadlineNanos(),
+                this.clock.getResetNanos());
+    }
+
+    private void submit(Runnable command) {
+        this.commands.add(command);
+        if (this.drainScheduled.compareAndSet(false, true))
+            SwingUtilities.invokeLater(this::drain);
+    }
+
+    private void drain() {
+        // Cleared before polling, a command queued meanwhile either gets polled here or schedules a new drain
+        this.drainScheduled.set(false);
+        Runnable command;
+        while ((command = this.commands.poll()) != null) {
+            command.run();
+        }
+    }
+
+    private void preset(HttpExchange exchange) throws IOException {
+        if (rejectUnlessPost(exchange))
+            return;
+
+        Duration duration;
+        try {
+            duration = TimeFormatter.parseDuration(requireParameter(exchange, "duration"));
+        } catch (IllegalArgumentException e) {
+            this.sendError(exchange, "Invalid duration: " + e.getMessage());
+            return;
+        }
+        this.command(exchange, () -> this.clock.setCountdown(duration));
+    }
+
+    private void target(HttpExchange exchange) throws IOException {
+        if (rejectUnlessPost(exchange))
+            return;
+
+        LocalDateTime target;
+        try {
+            var time = requireParameter(exchange, "time").trim();
+            target = Utils.nextClockTime(time.endsWith("h") ? time : time + " h");
+        } catch (IllegalArgumentException | DateTimeException e) {
+            this.sendError(exchange, "Invalid time: " + e.getMessage());
+            return;
+        }
+        this.command(exchange, () -> {
+            // Measured when applied, a queued command must not lose the time it waited
+            var now = LocalDateTime.now();
+            if (target.isAfter(now)) {
+                this.clock.setCountdown(Duration.between(now, target));
+                this.clock.start();
+            }
+        });
+    }
+
+    private void command(HttpExchange exchange, Runnable command) throws IOException {
+        if (rejectUnlessPost(exchange))
+            return;
+
+        try (exchange) {
+            this.submit(command);
+            exchange.sendResponseHeaders(202, -1);
+        }
+    }
+
+    /**
+     * Answers anything but {@code POST} with {@code 405}.
+     *
+     * @return true if the request was rejected and closed
+     */
+    private static boolean rejectUnlessPost(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("POST"))
+            return false;
+
+        try (exchange) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            exchange.sendResponseHeaders(405, -1);
+        }
+        return true;
+    }
+
+    private void sendState(HttpExchange exchange) throws IOException {
+        var state = this.state;
+        var remaining = state.running ? Math.max(0, state.deadlineNanos - System.nanoTime()) : state.remainingNanos;
+        var json = "{\"running\":" + state.running
+                + ",\"remainingMillis\":" + remaining / 1_000_000
+                + ",\"resetMillis\":" + state.resetNanos / 1_000_000 + "}";
+        this.send(exchange, 200, "application/json", json);
+    }
+
+    private void sendError(HttpExchange exchange, String message) throws IOException {
+        this.send(exchange, 400, "text/plain; charset=utf-8", message + "\n");
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        try (exchange) {
+            var data = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(status, data.length);
+            exchange.getResponseBody().write(data);
+        }
+    }
+
+    private static String requireParameter(HttpExchange exchange, String name) {
+        var query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                var separator = pair.indexOf('=');
+                if (separator > 0 && pair.substring(0, separator).equals(name))
+                    return URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        throw new IllegalArgumentException("missing parameter " + name);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import gui.OffscreenOutput;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the frames of an {@link OffscreenOutput} over HTTP.
+ * <ul>
+ *     <li>{@code /snapshot.png} - the current frame as PNG</li>
+ *     <li>{@code /snapshot.jpg} - the current frame as JPEG</li>
+ *     <li>{@code /stream.mjpeg} - a multipart MJPEG stream, a new part is sent whenever the frame changes</li>
+ * </ul>
+ */
+public class FrameServer {
+
+    private static final String BOUNDARY = "countdownframe";
+
+    // Repeat the current frame while paused, so clients do not run into timeouts
+    private static final long KEEP_ALIVE_MILLIS = 2000;
+
+    private final OffscreenOutput output;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    public FrameServer(OffscreenOutput output, InetSocketAddress address) throws IOException {
+        this.output = output;
+        this.server = HttpServer.create(address, 0);
+
+        // Streams stay open for a long time, so every client gets its own thread
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "FrameServer-Client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+
+        this.server.createContext("/snapshot.png", exchange -> this.sendSnapshot(exchange, "image/png", true));
+        this.server.createContext("/snapshot.jpg", exchange -> this.sendSnapshot(exchange, "image/jpeg", false));
+        this.server.createContext("/stream.mjpeg", this::stream);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.server.getAddress();
+    }
+
+    private void sendSnapshot(HttpExchange exchange, String contentType, boolean png) throws IOException {
+        if (this.output.getFrame().jpeg().length == 0) {
+            // Nothing rendered yet
+            try (exchange) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+            }
+            return;
+        }
+
+        var data = png ? this.output.getPng() : this.output.getFrame().jpeg();
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, data.length);
+            exchange.getResponseBody().write(data);
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+
+            var out = exchange.getResponseBody();
+            var version = -1L;
+            while (!Thread.currentThread().isInterrupted()) {
+                var frame = this.output.awaitFrame(version, KEEP_ALIVE_MILLIS);
+                if (frame.jpeg().length == 0) {
+                    // Placeholder before the first frame, wait for a newer one
+                    version = frame.version();
+                    continue;
+                }
+
+                var header = "--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: "
+                        + frame.jpeg().length + "\r\n\r\n";
+                out.write(header.getBytes(StandardCharsets.US_ASCII));
+                out.write(frame.jpeg());
+                out.write('\r');
+                out.write('\n');
+                out.flush();
+                version = frame.version();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // client disconnected
+        }
+    }
+}
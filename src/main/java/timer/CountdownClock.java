@@ -0,0 +1,348 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package timer;
+
+import diag.Metrics;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Countdown tick source based on a {@link System#nanoTime()} deadline.
+ * <p>
+ * The remaining time is always derived from the deadline, so late callbacks never accumulate drift.
+ * The clock only wakes up when the displayed value changes and stays idle while stopped or expired.
+ * All methods are expected to be called on the event dispatch thread.
+ */
+public class CountdownClock {
+
+    public static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    public interface Listener {
+        /**
+         * Called whenever the displayed value changes.
+         *
+         * @param remainingNanos remaining time at the moment of the tick
+         * @param latenessNanos  delay between the scheduled boundary and the actual callback, 0 for manual updates
+         */
+        void tick(long remainingNanos, long latenessNanos);
+
+        /**
+         * Called after the clock was started, stopped, reset or set to a new value.
+         */
+        default void stateChanged(CountdownClock clock) {
+        }
+    }
+
+    public interface Chain {
+        /**
+         * Called on the tick at which the countdown expires, before listeners are notified.
+         *
+         * @param expiredDeadlineNanos the deadline that was just reached
+         * @return deadline of the following countdown, or any earlier value to let the clock expire
+         */
+        long nextDeadline(long expiredDeadlineNanos);
+
+        /**
+         * Called when a countdown set with {@link #setCountdown(Duration)} replaced the chain.
+         */
+        default void detached() {
+        }
+    }
+
+    private final Timer timer;
+
+    // Copied on write, so publishing a tick does not allocate an iterator
+    private Listener[] listeners = new Listener[0];
+
+    private Chain chain;
+
+    private long resetNanos = 0;
+
+    // Remaining time while stopped
+    private long remainingNanos = 0;
+
+    // Deadline while running
+    private long deadlineNanos = 0;
+
+    private boolean running = false;
+
+    // Whether a tick is scheduled, reported to the metrics
+    private boolean active = false;
+
+    // Decides how often the displayed value changes
+    private TimeFormatter.Layout layout = TimeFormatter.Layout.HH_MM_SS;
+
+    private long framePeriodNanos = NANOS_PER_SECOND / 60;
+
+    // Time of the boundary the pending timer callback was scheduled for
+    private long scheduledNanos = 0;
+
+    private long lastLatenessNanos = 0;
+
+    private long maxLatenessNanos = 0;
+
+    public CountdownClock() {
+        this.timer = new Timer(0, this::onTimer);
+        this.timer.setRepeats(false);
+        this.timer.setCoalesce(true);
+    }
+
+    public void addListener(Listener listener) {
+        this.listeners = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        this.listeners[this.listeners.length - 1] = listener;
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners = Arrays.stream(this.listeners).filter(l -> l != listener).toArray(Listener[]::new);
+    }
+
+    /**
+     * Sets who decides how the clock continues once it expires, e.g. the next segment of a rundown.
+     * The next deadline is derived from the expired one instead of the time of the callback, so chained countdowns
+     * do not accumulate the callback lateness.
+     */
+    public void setChain(Chain chain) {
+        this.chain = chain;
+    }
+
+    /**
+     * Sets the layout the outputs display. While sub-second digits are shown the clock ticks once per frame,
+     * otherwise once per second.
+     */
+    public void setLayout(TimeFormatter.Layout layout) {
+        if (this.layout == layout)
+            return;
+
+        this.layout = layout;
+        this.schedule();
+    }
+
+    /**
+     * Sets the refresh rate of the outputs, sub-second digits are not updated more often.
+     *
+     * @param hertz refresh rate, 0 or less if unknown
+     */
+    public void setFrameRate(int hertz) {
+        this.framePeriodNanos = NANOS_PER_SECOND / (hertz > 0 ? hertz : 60);
+    }
+
+    public void start() {
+        if (this.running)
+            return;
+
+        this.deadlineNanos = System.nanoTime() + this.remainingNanos;
+        this.running = true;
+        this.schedule();
+        this.fireStateChanged();
+    }
+
+    public void stop() {
+        if (!this.running)
+            return;
+
+        this.remainingNanos = this.getRemainingNanos();
+        this.running = false;
+        this.schedule();
+        this.fireStateChanged();
+    }
+
+    public void reset() {
+        this.setRemaining(this.resetNanos);
+        this.fireStateChanged();
+    }
+
+    /**
+     * Takes over the state of another clock, e.g. a cluster leader.
+     * While running, the deadline is only moved and listeners are notified if the displayed value changes.
+     *
+     * @param deadlineNanos deadline in terms of the local {@link System#nanoTime()}, only used while running
+     * @param remainingNanos remaining time, only used while stopped
+     */
+    public void synchronize(boolean running, long deadlineNanos, long remainingNanos, long resetNanos) {
+        var displayed = this.toDisplayed(this.getRemainingNanos());
+        var stateChanged = running != this.running || resetNanos != this.resetNanos;
+
+        this.resetNanos = resetNanos;
+        this.running = running;
+        if (running) {
+            this.deadlineNanos = deadlineNanos;
+        } else {
+            this.remainingNanos = Math.max(0, remainingNanos);
+        }
+
+        var remaining = this.getRemainingNanos();
+        if (stateChanged || this.toDisplayed(remaining) != displayed) {
+            this.publish(remaining, 0);
+        }
+        this.schedule();
+
+        if (stateChanged)
+            this.fireStateChanged();
+    }
+
+    public long getDeadlineNanos() {
+        return this.deadlineNanos;
+    }
+
+    /**
+     * Sets and resets the countdown. A chain set before is dropped, whoever set the countdown takes over.
+     */
+    public void setCountdown(Duration duration) {
+        if (this.chain != null) {
+            var chain = this.chain;
+            this.chain = null;
+            chain.detached();
+        }
+        this.resetNanos = Math.max(0, duration.toNanos());
+        this.reset();
+    }
+
+    private void setRemaining(long nanos) {
+        this.remainingNanos = nanos;
+        if (this.running) {
+            this.deadlineNanos = System.nanoTime() + nanos;
+        }
+
+        this.publish(nanos, 0);
+        this.schedule();
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    public long getRemainingNanos() {
+        if (this.running) {
+            return Math.max(0, this.deadlineNanos - System.nanoTime());
+        }
+        return this.remainingNanos;
+    }
+
+    public long getRemainingSeconds() {
+        return toDisplayedSeconds(this.getRemainingNanos());
+    }
+
+    public long getResetNanos() {
+        return this.resetNanos;
+    }
+
+    public long getLastLatenessNanos() {
+        return this.lastLatenessNanos;
+    }
+
+    public long getMaxLatenessNanos() {
+        return this.maxLatenessNanos;
+    }
+
+    /**
+     * A countdown shows the full second until it has completely elapsed, so partial seconds round up.
+     */
+    public static long toDisplayedSeconds(long nanos) {
+        return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Remaining time rounded up to the resolution of the layout, changes exactly when the displayed value does.
+     */
+    private long toDisplayed(long nanos) {
+        var resolution = this.layout.getResolutionNanos(nanos);
+        return (nanos + resolution - 1) / resolution * resolution;
+    }
+
+    private void onTimer(ActionEvent e) {
+        if (!this.running)
+            return;
+
+        var now = System.nanoTime();
+
+        // Swing timers work in milliseconds, an early wake-up just waits for the rest
+        if (now >= this.scheduledNanos) {
+            var lateness = now - this.scheduledNanos;
+            this.lastLatenessNanos = lateness;
+            this.maxLatenessNanos = Math.max(this.maxLatenessNanos, lateness);
+            Metrics.TICK_LATENESS.record(lateness);
+
+            // A very late callback may have missed several short countdowns of the chain
+            var chained = false;
+            while (this.chain != null && now >= this.deadlineNanos) {
+                var next = this.chain.nextDeadline(this.deadlineNanos);
+                if (next <= this.deadlineNanos)
+                    break;
+
+                this.resetNanos = next - this.deadlineNanos;
+                this.deadlineNanos = next;
+                chained = true;
+            }
+
+            this.publish(Math.max(0, this.deadlineNanos - now), lateness);
+            if (chained) {
+                this.schedule();
+                this.fireStateChanged();
+                return;
+            }
+        }
+
+        this.schedule();
+    }
+
+    private void schedule() {
+        this.timer.stop();
+        var now = System.nanoTime();
+        var remaining = this.deadlineNanos - now;
+        this.setActive(this.running && remaining > 0);
+        if (!this.active)
+            return;
+
+        // Next boundary is the moment the displayed value drops by one unit
+        var resolution = this.layout.getResolutionNanos(remaining);
+        var untilBoundary = remaining - (this.toDisplayed(remaining) - resolution);
+        if (resolution < NANOS_PER_SECOND) {
+            // Sub-second digits may change faster than the display refreshes, wake up once per frame at most
+            // but never after the deadline
+            untilBoundary = Math.min(Math.max(untilBoundary, this.framePeriodNanos), remaining);
+        }
+        this.scheduledNanos = now + untilBoundary;
+
+        var delayMillis = (int) ((untilBoundary + 999_999) / 1_000_000);
+        this.timer.setInitialDelay(delayMillis);
+        this.timer.start();
+    }
+
+    private void setActive(boolean active) {
+        if (this.active != active) {
+            this.active = active;
+            Metrics.clockActive(active);
+        }
+    }
+
+    private void fireStateChanged() {
+        var listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].stateChanged(this);
+        }
+    }
+
+    private void publish(long remainingNanos, long latenessNanos) {
+        var listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].tick(remainingNanos, latenessNanos);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package timer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered list of show segments, each counting down a fixed duration or until a time of day.
+ * <p>
+ * Rundown files have one segment per line: {@code duration;name;profile} or {@code @time;name;profile}, e.g.
+ * {@code 00:05:00;Intro;Sponsor} or {@code @14:30;Keynote}. Name and profile are optional, lines starting with
+ * {@code #} are comments.
+ */
+public class Rundown {
+
+    // A time of day further back than this is taken for the next day, a closer one as an overrun
+    private static final Duration OVERRUN_LIMIT = Duration.ofHours(12);
+
+    /**
+     * @param duration  length of the segment, null if it ends at a time of day
+     * @param clockTime time of day the segment ends, null for a fixed duration
+     * @param profile   appearance profile shown during the segment, null to keep the current look
+     */
+    public record Segment(String name, Duration duration, LocalTime clockTime, String profile) {
+
+        public boolean isClockTime() {
+            return this.clockTime != null;
+        }
+    }
+
+    private final List<Segment> segments;
+
+    public Rundown(List<Segment> segments) {
+        this.segments = List.copyOf(segments);
+    }
+
+    public static Rundown load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static Rundown parse(List<String> lines) throws IllegalArgumentException {
+        var segments = new ArrayList<Segment>();
+        for (int i = 0; i < lines.size(); i++) {
+            var line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            var fields = line.split(";", -1);
+            var time = fields[0].strip();
+            var name = fields.length > 1 && !fields[1].isBlank() ? fields[1].strip() : "Segment " + (segments.size() + 1);
+            var profile = fields.length > 2 && !fields[2].isBlank() ? fields[2].strip() : null;
+            try {
+                if (time.startsWith("@")) {
+                    segments.add(new Segment(name, null, LocalTime.parse(time.substring(1).strip()), profile));
+                } else {
+                    segments.add(new Segment(name, TimeFormatter.parseDuration(time), null, profile));
+                }
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": invalid time '" + time + "'", e);
+            }
+        }
+
+        if (segments.isEmpty())
+            throw new IllegalArgumentException("Rundown has no segments");
+        return new Rundown(segments);
+    }
+
+    public List<Segment> getSegments() {
+        return this.segments;
+    }
+
+    public int size() {
+        return this.segments.size();
+    }
+
+    public Segment get(int index) {
+        return this.segments.get(index);
+    }
+
+    /**
+     * Computes the end of every segment in terms of {@link System#nanoTime()} if the show starts now and is not
+     * paused. A time of day that already passed before the segment would start ends it immediately.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @param now      the current wall clock time, used to place times of day
+     */
+    public long[] schedule(long nowNanos, LocalDateTime now) {
+        var ends = new long[this.segments.size()];
+        var previous = nowNanos;
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = this.end(i, previous, nowNanos, now);
+            previous = ends[i];
+        }
+        return ends;
+    }
+
+    /**
+     * End of a segment that starts at the given time, never before its start.
+     */
+    long end(int index, long startNanos, long nowNanos, LocalDateTime now) {
+        var segment = this.segments.get(index);
+        if (!segment.isClockTime())
+            return startNanos + segment.duration().toNanos();
+
+        var start = now.plusNanos(startNanos - nowNanos);
+        var target = LocalDateTime.of(start.toLocalDate(), segment.clockTime());
+        if (target.isBefore(start.minus(OVERRUN_LIMIT)))
+            target = target.plusDays(1);
+
+        return Math.max(startNanos, nowNanos + Duration.between(now, target).toNanos());
+    }
+}
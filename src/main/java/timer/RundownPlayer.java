@@ -0,0 +1,164 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package timer;
+
+import java.time.LocalDateTime;
+
+/**
+ * Plays a rundown on a clock: when a segment expires the clock continues with the next one on the same tick.
+ * <p>
+ * The ends of the segments are computed once when the rundown starts. A fixed segment is chained to the deadline
+ * of the previous one, so pausing the clock moves the rest of the show, while a segment ending at a time of day
+ * keeps its end. Segments whose time of day already passed are skipped. All methods are expected to be called on
+ * the event dispatch thread.
+ */
+public class RundownPlayer implements CountdownClock.Chain, CountdownClock.Listener {
+
+    public interface Listener {
+        /**
+         * Called when a segment becomes the displayed countdown, on the tick the previous one expired and after the
+         * clock was updated.
+         */
+        void segmentStarted(int index);
+
+        default void finished() {
+        }
+
+        /**
+         * Called when another countdown was set on the clock, e.g. remotely, which ended the rundown.
+         */
+        default void replaced() {
+        }
+    }
+
+    private final CountdownClock clock;
+
+    private final Rundown rundown;
+
+    private final Listener listener;
+
+    private long[] ends;
+
+    private int index = -1;
+
+    // Segment the clock switched to, reported once the clock notified its listeners
+    private int started = -1;
+
+    public RundownPlayer(CountdownClock clock, Rundown rundown, Listener listener) {
+        this.clock = clock;
+        this.rundown = rundown;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the first segment right away, replacing whatever the clock was counting.
+     */
+    public void start() {
+        var now = System.nanoTime();
+        this.ends = this.rundown.schedule(now, LocalDateTime.now());
+        // Skip leading segments whose time of day already passed
+        this.index = 0;
+        while (this.index < this.ends.length - 1 && this.ends[this.index] <= now) {
+            this.index++;
+        }
+        this.clock.setChain(this);
+        this.clock.addListener(this);
+        var end = this.ends[this.index];
+        this.clock.synchronize(true, end, 0, Math.max(0, end - now));
+
+        // Even the last segment ended already, e.g. at a time of day that passed, so the clock never expires
+        if (end <= now) {
+            this.stop();
+            this.listener.finished();
+            return;
+        }
+        this.listener.segmentStarted(this.index);
+    }
+
+    /**
+     * Leaves the rundown, the clock keeps counting down the current segment.
+     */
+    public void stop() {
+        if (this.index < 0)
+            return;
+
+        this.index = -1;
+        this.started = -1;
+        this.clock.setChain(null);
+        this.clock.removeListener(this);
+    }
+
+    public boolean isPlaying() {
+        return this.index >= 0;
+    }
+
+    /**
+     * Index of the current segment, -1 if the rundown is not playing.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Planned ends of the segments as of the start, in terms of {@link System#nanoTime()}.
+     */
+    public long[] getSchedule() {
+        return this.ends;
+    }
+
+    public Rundown getRundown() {
+        return this.rundown;
+    }
+
+    @Override
+    public long nextDeadline(long expiredDeadlineNanos) {
+        while (++this.index < this.rundown.size()) {
+            var segment = this.rundown.get(this.index);
+            var deadline = segment.isClockTime()
+                    ? this.ends[this.index]
+                    : expiredDeadlineNanos + segment.duration().toNanos();
+
+            if (deadline > expiredDeadlineNanos) {
+                this.started = this.index;
+                return deadline;
+            }
+        }
+
+        this.stop();
+        this.listener.finished();
+        return expiredDeadlineNanos;
+    }
+
+    @Override
+    public void detached() {
+        this.stop();
+        this.listener.replaced();
+    }
+
+    @Override
+    public void tick(long remainingNanos, long latenessNanos) {
+    }
+
+    @Override
+    public void stateChanged(CountdownClock clock) {
+        if (this.started >= 0) {
+            var index = this.started;
+            this.started = -1;
+            this.listener.segmentStarted(index);
+        }
+    }
+}
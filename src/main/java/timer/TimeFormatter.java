@@ -0,0 +1,198 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package timer;
+
+import java.time.Duration;
+
+/**
+ * Formats remaining time into a reusable character buffer without allocating.
+ * Not thread-safe, every output keeps its own instance.
+ */
+public final class TimeFormatter {
+
+    public enum Layout {
+        HH_MM_SS("HH:MM:SS", CountdownClock.NANOS_PER_SECOND),
+        MM_SS("MM:SS", CountdownClock.NANOS_PER_SECOND),
+        D_HH_MM_SS("D:HH:MM:SS", CountdownClock.NANOS_PER_SECOND),
+        HH_MM_SS_T("HH:MM:SS.T", 100_000_000L),
+        MM_SS_CC("MM:SS.CC", 10_000_000L),
+        HH_MM_SS_LAST_MINUTE_CC("HH:MM:SS, SS.CC in last minute", 10_000_000L);
+
+        // Remaining time up to which the last minute layout shows hundredths
+        private static final long LAST_MINUTE_NANOS = 60 * CountdownClock.NANOS_PER_SECOND;
+
+        private final String pattern;
+
+        private final long resolutionNanos;
+
+        Layout(String pattern, long resolutionNanos) {
+            this.pattern = pattern;
+            this.resolutionNanos = resolutionNanos;
+        }
+
+        /**
+         * The layout without sub-second digits, for views that only need to follow whole seconds.
+         */
+        public Layout withoutFraction() {
+            return switch (this) {
+                case HH_MM_SS_T, HH_MM_SS_LAST_MINUTE_CC -> HH_MM_SS;
+                case MM_SS_CC -> MM_SS;
+                default -> this;
+            };
+        }
+
+        /**
+         * Smallest time step the layout displays.
+         */
+        public long getResolutionNanos() {
+            return resolutionNanos;
+        }
+
+        /**
+         * Time step the layout displays for the given remaining time, layouts that only show fractions in the
+         * last minute are coarser before.
+         */
+        public long getResolutionNanos(long remainingNanos) {
+            if (this == HH_MM_SS_LAST_MINUTE_CC && Math.abs(remainingNanos) > LAST_MINUTE_NANOS)
+                return CountdownClock.NANOS_PER_SECOND;
+            return resolutionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return pattern;
+        }
+    }
+
+    private final char[] buffer = new char[32];
+
+    /**
+     * Parses a countdown value like {@code 01:30:00}, {@code 05:00} or plain seconds, as entered in the control
+     * window, on the command line, in rundown files and over the remote control.
+     */
+    public static Duration parseDuration(String text) throws NumberFormatException {
+        var parts = text.strip().split(":");
+        if (parts.length > 3)
+            throw new NumberFormatException("Expected HH:MM:SS: " + text);
+
+        var seconds = 0L;
+        for (String part : parts) {
+            var value = Long.parseLong(part.strip());
+            if (value < 0)
+                throw new NumberFormatException("Negative value: " + text);
+            seconds = seconds * 60 + value;
+        }
+        return Duration.ofSeconds(seconds);
+    }
+
+    private int length = 0;
+
+    /**
+     * Writes the time into the internal buffer. Partial units round up, so the display reaches zero
+     * exactly when the countdown expires.
+     *
+     * @return number of characters written
+     */
+    public int format(long nanos, Layout layout) {
+        this.length = 0;
+        if (nanos < 0) {
+            this.buffer[this.length++] = '-';
+            nanos = -nanos;
+        }
+
+        var resolution = layout.getResolutionNanos(nanos);
+        var units = nanos / resolution + (nanos % resolution != 0 ? 1 : 0);
+        var unitsPerSecond = CountdownClock.NANOS_PER_SECOND / resolution;
+        var fraction = units % unitsPerSecond;
+        var seconds = units / unitsPerSecond;
+
+        switch (layout) {
+            case HH_MM_SS_LAST_MINUTE_CC -> {
+                if (unitsPerSecond > 1) {
+                    this.appendNumber(seconds, 2);
+                } else {
+                    this.appendNumber(seconds / 3600, 2);
+                    this.append(':');
+                    this.appendNumber((seconds % 3600) / 60, 2);
+                    this.append(':');
+                    this.appendNumber(seconds % 60, 2);
+                }
+            }
+            case HH_MM_SS, HH_MM_SS_T -> {
+                this.appendNumber(seconds / 3600, 2);
+                this.append(':');
+                this.appendNumber((seconds % 3600) / 60, 2);
+                this.append(':');
+                this.appendNumber(seconds % 60, 2);
+            }
+            case MM_SS, MM_SS_CC -> {
+                this.appendNumber(seconds / 60, 2);
+                this.append(':');
+                this.appendNumber(seconds % 60, 2);
+            }
+            case D_HH_MM_SS -> {
+                this.appendNumber(seconds / 86400, 1);
+                this.append(':');
+                this.appendNumber((seconds % 86400) / 3600, 2);
+                this.append(':');
+                this.appendNumber((seconds % 3600) / 60, 2);
+                this.append(':');
+                this.appendNumber(seconds % 60, 2);
+            }
+        }
+
+        if (unitsPerSecond > 1) {
+            this.append('.');
+            this.appendNumber(fraction, unitsPerSecond == 10 ? 1 : 2);
+        }
+        return this.length;
+    }
+
+    private void append(char c) {
+        this.buffer[this.length++] = c;
+    }
+
+    private void appendNumber(long value, int minDigits) {
+        var digits = 1;
+        for (var rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        for (int i = this.length + digits - 1; i >= this.length; i--) {
+            this.buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        this.length += digits;
+    }
+
+    public char[] getBuffer() {
+        return this.buffer;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Creates a String of the last formatted value, only for consumers that cannot work with the buffer.
+     */
+    @Override
+    public String toString() {
+        return new String(this.buffer, 0, this.length);
+    }
+}
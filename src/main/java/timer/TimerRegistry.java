@@ -0,0 +1,411 @@
+/*
+ *  Copyright (C) 2024 - Joel Steffens
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package timer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps any number of named countdowns, e.g. breakout rooms or talk slots, next to the displayed clock.
+ * <p>
+ * Running countdowns are kept in a hierarchical timing wheel: every level has 64 slots and each slot of a level
+ * spans all 64 slots of the level below. Starting, pausing and removing a countdown only links or unlinks it in
+ * one slot. A single driver thread advances the wheel tick by tick, touching only the slot that is due and, every
+ * 64 ticks, moving the entries of one slot of the next level down. Countdowns that are not due are never looked at.
+ * <p>
+ * All methods are thread-safe. Expiry listeners are called on the driver thread outside of the registry lock, so
+ * they may change countdowns but should hand longer work or UI updates to another thread.
+ */
+public class TimerRegistry implements AutoCloseable {
+
+    public static final long DEFAULT_TICK_NANOS = 10_000_000L;
+
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // Five levels cover 2^30 ticks, about 124 days at the default tick, later deadlines wait in the top level
+    private static final int LEVELS = 5;
+
+    private static final long MAX_DELTA_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    public interface ExpiryListener {
+        /**
+         * Called once when the countdown reaches zero, up to one tick late.
+         */
+        void expired(Countdown countdown);
+    }
+
+    /**
+     * Handle of a countdown in the registry.
+     */
+    public final class Countdown {
+
+        private final String name;
+
+        private final ExpiryListener listener;
+
+        private long durationNanos;
+
+        // Remaining time while paused
+        private long remainingNanos;
+
+        // Deadline while running
+        private long deadlineNanos;
+
+        private long deadlineTick;
+
+        private boolean running = false;
+
+        private boolean removed = false;
+
+        // Links within the wheel slot
+        private Countdown previous;
+
+        private Countdown next;
+
+        private int level = -1;
+
+        private int slot = -1;
+
+        private Countdown(String name, long durationNanos, ExpiryListener listener) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.remainingNanos = durationNanos;
+            this.listener = listener;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void start() {
+            synchronized (TimerRegistry.this.lock) {
+                if (this.running || this.removed || this.remainingNanos <= 0)
+                    return;
+
+                var now = TimerRegistry.this.clock.getAsLong();
+                this.deadlineNanos = now + this.remainingNanos;
+                this.running = true;
+                TimerRegistry.this.schedule(this, now);
+            }
+        }
+
+        public void pause() {
+            synchronized (TimerRegistry.this.lock) {
+                if (!this.running)
+                    return;
+
+                this.remainingNanos = Math.max(0, this.deadlineNanos - TimerRegistry.this.clock.getAsLong());
+                this.running = false;
+                TimerRegistry.this.unlink(this);
+            }
+        }
+
+        /**
+         * Sets the remaining time back to the duration, a running countdown keeps running.
+         */
+        public void reset() {
+            synchronized (TimerRegistry.this.lock) {
+                if (this.removed)
+                    return;
+
+                this.remainingNanos = this.durationNanos;
+                if (this.running) {
+                    TimerRegistry.this.unlink(this);
+                    this.running = false;
+                    this.start();
+                }
+            }
+        }
+
+        public void reset(Duration duration) {
+            synchronized (TimerRegistry.this.lock) {
+                this.durationNanos = Math.max(0, duration.toNanos());
+                this.reset();
+            }
+        }
+
+        public boolean isRunning() {
+            synchronized (TimerRegistry.this.lock) {
+                return this.running;
+            }
+        }
+
+        public long getRemainingNanos() {
+            synchronized (TimerRegistry.this.lock) {
+                if (this.running)
+                    return Math.max(0, this.deadlineNanos - TimerRegistry.this.clock.getAsLong());
+                return this.remainingNanos;
+            }
+        }
+
+        public long getDurationNanos() {
+            synchronized (TimerRegistry.this.lock) {
+                return this.durationNanos;
+            }
+        }
+    }
+
+    private final Object lock = new Object();
+
+    private final LongSupplier clock;
+
+    private final long tickNanos;
+
+    private final long originNanos;
+
+    // Heads of the intrusive lists, one per slot and level
+    private final Countdown[][] wheel = new Countdown[LEVELS][SLOTS];
+
+    private final Map<String, Countdown> countdowns = new HashMap<>();
+
+    // Last tick whose slot was processed
+    private long currentTick = 0;
+
+    private int scheduled = 0;
+
+    private volatile Thread driver;
+
+    private volatile boolean closed = false;
+
+    public TimerRegistry() {
+        this(System::nanoTime, DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * @param clock     monotonic time source in nanoseconds
+     * @param tickNanos resolution of the expiry callbacks
+     */
+    public TimerRegistry(LongSupplier clock, long tickNanos) {
+        if (tickNanos <= 0)
+            throw new IllegalArgumentException("Tick must be positive");
+
+        this.clock = clock;
+        this.tickNanos = tickNanos;
+        this.originNanos = clock.getAsLong();
+    }
+
+    /**
+     * Adds a paused countdown, replacing one with the same name.
+     */
+    public Countdown create(String name, Duration duration, ExpiryListener listener) {
+        var countdown = new Countdown(name, Math.max(0, duration.toNanos()), listener);
+        synchronized (this.lock) {
+            var previous = this.countdowns.put(name, countdown);
+            if (previous != null)
+                this.release(previous);
+        }
+        return countdown;
+    }
+
+    public Countdown get(String name) {
+        synchronized (this.lock) {
+            return this.countdowns.get(name);
+        }
+    }
+
+    public List<Countdown> getAll() {
+        synchronized (this.lock) {
+            return new ArrayList<>(this.countdowns.values());
+        }
+    }
+
+    public void remove(String name) {
+        synchronized (this.lock) {
+            var countdown = this.countdowns.remove(name);
+            if (countdown != null)
+                this.release(countdown);
+        }
+    }
+
+    public int size() {
+        synchronized (this.lock) {
+            return this.countdowns.size();
+        }
+    }
+
+    private void release(Countdown countdown) {
+        this.unlink(countdown);
+        countdown.running = false;
+        countdown.removed = true;
+    }
+
+    /**
+     * Starts the driver thread, which advances the wheel tick by tick until the registry is closed.
+     * Without it the owner has to call {@link #advanceTo(long)}.
+     */
+    public void start() {
+        this.driver = new Thread(this::drive, "TimerRegistry");
+        this.driver.setDaemon(true);
+        this.driver.start();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.driver != null)
+            LockSupport.unpark(this.driver);
+    }
+
+    private void drive() {
+        while (!this.closed) {
+            long waitNanos;
+            synchronized (this.lock) {
+                // Nothing to expire, sleep until a countdown is started
+                waitNanos = this.scheduled > 0
+                        ? this.originNanos + (this.currentTick + 1) * this.tickNanos - this.clock.getAsLong()
+                        : Long.MAX_VALUE;
+            }
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            this.advanceTo(this.clock.getAsLong());
+        }
+    }
+
+    /**
+     * Processes all ticks up to the given time and calls the listeners of the expired countdowns.
+     *
+     * @return number of expired countdowns
+     */
+    public int advanceTo(long nowNanos) {
+        // Collected apart from the slot links, a listener may start a countdown that is still waiting for its call
+        List<Countdown> expired = null;
+        synchronized (this.lock) {
+            var targetTick = Math.floorDiv(nowNanos - this.originNanos, this.tickNanos);
+            if (this.scheduled == 0 && targetTick > this.currentTick) {
+                this.currentTick = targetTick;
+            }
+
+            while (this.currentTick < targetTick) {
+                var tick = this.currentTick + 1;
+
+                // Move entries of the due higher level slots down before the lowest slot is emptied
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+                        this.cascade(level, (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+
+                var slot = (int) (tick & SLOT_MASK);
+                for (var countdown = this.wheel[0][slot]; countdown != null; ) {
+                    var next = countdown.next;
+                    this.unlink(countdown);
+                    countdown.running = false;
+                    countdown.remainingNanos = 0;
+                    if (expired == null)
+                        expired = new ArrayList<>();
+                    expired.add(countdown);
+                    countdown = next;
+                }
+                this.currentTick = tick;
+            }
+        }
+
+        if (expired == null)
+            return 0;
+
+        for (Countdown countdown : expired) {
+            if (countdown.listener == null)
+                continue;
+            try {
+                countdown.listener.expired(countdown);
+            } catch (RuntimeException e) {
+                // A faulty listener must not stop the driver thread and with it all other countdowns
+                System.err.println("Error in expiry listener of countdown " + countdown.name + ": " + e);
+            }
+        }
+        return expired.size();
+    }
+
+    private void cascade(int level, int slot) {
+        var countdown = this.wheel[level][slot];
+        this.wheel[level][slot] = null;
+        while (countdown != null) {
+            var next = countdown.next;
+            countdown.previous = null;
+            countdown.next = null;
+            countdown.level = -1;
+            this.scheduled--;
+            this.insert(countdown);
+            countdown = next;
+        }
+    }
+
+    private void schedule(Countdown countdown, long nowNanos) {
+        if (this.scheduled == 0) {
+            // The wheel was empty, skip the ticks that passed while the driver was sleeping
+            this.currentTick = Math.max(this.currentTick, Math.floorDiv(nowNanos - this.originNanos, this.tickNanos));
+            if (this.driver != null)
+                LockSupport.unpark(this.driver);
+        }
+
+        // Round up, a countdown never expires before its deadline
+        countdown.deadlineTick = Math.floorDiv(countdown.deadlineNanos - this.originNanos + this.tickNanos - 1,
+                this.tickNanos);
+        this.insert(countdown);
+    }
+
+    private void insert(Countdown countdown) {
+        // Overdue countdowns expire with the next tick, far away ones wait in the top level and are inserted again
+        var next = this.currentTick + 1;
+        var tick = Math.min(Math.max(countdown.deadlineTick, next), next + MAX_DELTA_TICKS);
+
+        // Lowest level whose slot covers both the next tick and the deadline, so a slot is always emptied
+        // before its first tick is due
+        var level = 0;
+        while (level < LEVELS - 1 && tick >>> (SLOT_BITS * (level + 1)) != next >>> (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        var slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        var head = this.wheel[level][slot];
+        countdown.previous = null;
+        countdown.next = head;
+        if (head != null)
+            head.previous = countdown;
+        this.wheel[level][slot] = countdown;
+        countdown.level = level;
+        countdown.slot = slot;
+        this.scheduled++;
+    }
+
+    private void unlink(Countdown countdown) {
+        if (countdown.level < 0)
+            return;
+
+        if (countdown.previous != null) {
+            countdown.previous.next = countdown.next;
+        } else {
+            this.wheel[countdown.level][countdown.slot] = countdown.next;
+        }
+        if (countdown.next != null)
+            countdown.next.previous = countdown.previous;
+
+        countdown.previous = null;
+        countdown.next = null;
+        countdown.level = -1;
+        this.scheduled--;
+    }
+}